@@ -0,0 +1,116 @@
+package com.korconstructions.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+@Configuration
+public class AsyncConfig {
+
+    @Value("${app.documents.indexing.threads:2}")
+    private int indexingThreads;
+
+    @Value("${app.documents.indexing.queue-capacity:20}")
+    private int indexingQueueCapacity;
+
+    @Value("${app.documents.embedding.concurrency:4}")
+    private int embeddingConcurrency;
+
+    @Value("${app.documents.pdf.parallelism:0}")
+    private int pdfParallelism;
+
+    @Value("${app.documents.ocr.workers:2}")
+    private int ocrWorkers;
+
+    /**
+     * Bounded pool for background document indexing.
+     * When the queue is full new submissions are rejected instead of piling up in memory.
+     */
+    @Bean(name = "documentIndexingExecutor")
+    public ThreadPoolTaskExecutor documentIndexingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(indexingThreads);
+        executor.setMaxPoolSize(indexingThreads);
+        executor.setQueueCapacity(indexingQueueCapacity);
+        executor.setThreadNamePrefix("doc-index-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Workers that send embedding batches. Callers acquire a slot before submitting,
+     * so at most app.documents.embedding.concurrency batches are ever queued or running.
+     */
+    @Bean(name = "embeddingExecutor")
+    public ThreadPoolTaskExecutor embeddingExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(embeddingConcurrency);
+        executor.setMaxPoolSize(embeddingConcurrency);
+        executor.setThreadNamePrefix("embed-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Runs the vector search of a question while the caller does the lexical lookup
+     */
+    @Bean(name = "retrievalExecutor")
+    public ThreadPoolTaskExecutor retrievalExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("retrieve-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Prepares streamed answers off the servlet thread. Kept apart from the retrieval
+     * pool because these tasks wait on retrieval tasks.
+     */
+    @Bean(name = "answerStreamExecutor")
+    public ThreadPoolTaskExecutor answerStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("answer-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Workers that extract slices of PDF pages. Shared by all indexing threads, so a large
+     * PDF uses the spare cores without each indexing thread starting its own pool.
+     * A parallelism of 0 means one worker per available processor.
+     */
+    @Bean(name = "pdfExtractionPool", destroyMethod = "shutdownNow")
+    public ForkJoinPool pdfExtractionPool() {
+        int parallelism = pdfParallelism > 0 ? pdfParallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("pdf-extract-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Waits on Tesseract processes for scanned PDF pages. Callers limit how many pages
+     * they hand over, so the queue is not bounded here.
+     */
+    @Bean(name = "ocrExecutor")
+    public ThreadPoolTaskExecutor ocrExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ocrWorkers);
+        executor.setMaxPoolSize(ocrWorkers);
+        executor.setThreadNamePrefix("ocr-");
+        executor.initialize();
+        return executor;
+    }
+}
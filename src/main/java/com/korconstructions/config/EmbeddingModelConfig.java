@@ -0,0 +1,30 @@
+package com.korconstructions.config;
+
+import com.korconstructions.service.CachingEmbeddingModel;
+import com.korconstructions.service.QueryEmbeddingCache;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class EmbeddingModelConfig {
+
+    /**
+     * Wrap the auto-configured embedding model, so the vector store and every other
+     * consumer share the query embedding cache
+     */
+    @Bean
+    public static BeanPostProcessor cachingEmbeddingModelPostProcessor(ObjectProvider<QueryEmbeddingCache> cache) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof EmbeddingModel model && !(bean instanceof CachingEmbeddingModel)) {
+                    return new CachingEmbeddingModel(model, cache.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.korconstructions.config;
+
+import com.korconstructions.service.XlsxStreamingParser;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ParserDecorator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Tika configuration for the whole application. Loading it scans the classpath for
+ * every parser and detector, so it is done once; the parser and detector are thread-safe.
+ */
+@Slf4j
+@Configuration
+public class TikaParserConfig {
+
+    @Value("${app.documents.xlsx.streaming:true}")
+    private boolean xlsxStreaming;
+
+    @Value("${app.documents.extraction.isolated:true}")
+    private boolean isolated;
+
+    @Value("${app.documents.extraction.workers:2}")
+    private int workers;
+
+    @Value("${app.documents.extraction.worker-heap-mb:192}")
+    private int workerHeapMb;
+
+    @Value("${app.documents.extraction.timeout-seconds:120}")
+    private long timeoutSeconds;
+
+    @Value("${app.documents.extraction.files-per-worker:100}")
+    private int filesPerWorker;
+
+    @Value("${app.documents.extraction.worker-wait-seconds:15}")
+    private long workerWaitSeconds;
+
+    @Bean
+    public TikaConfig tikaConfig() {
+        return TikaConfig.getDefaultConfig();
+    }
+
+    /**
+     * Detects the media type from magic bytes (and the file name when those are ambiguous)
+     * without parsing the document
+     */
+    @Bean
+    public Detector tikaDetector(TikaConfig tikaConfig) {
+        return tikaConfig.getDetector();
+    }
+
+    /**
+     * Tika's parsers, with XLSX read row by row by {@link XlsxStreamingParser} unless that is switched off
+     */
+    @Bean
+    public AutoDetectParser tikaParser(TikaConfig tikaConfig) {
+        AutoDetectParser defaults = new AutoDetectParser(tikaConfig);
+        if (!xlsxStreaming) {
+            return defaults;
+        }
+        // Of two parsers for one type the later wins
+        AutoDetectParser parser = new AutoDetectParser(tikaConfig.getDetector(),
+            new CompositeParser(tikaConfig.getMediaTypeRegistry(), tikaConfig.getParser(), new XlsxStreamingParser()));
+        parser.setMediaTypeRegistry(tikaConfig.getMediaTypeRegistry());
+        parser.setFallback(defaults.getFallback());
+        parser.setAutoDetectParserConfig(tikaConfig.getAutoDetectParserConfig());
+        return parser;
+    }
+
+    /**
+     * Parser for document text. When isolated, Tika runs in a pool of child JVMs with their own
+     * heap cap: a parse that exceeds the timeout makes its child exit, a child that runs out of
+     * memory or crashes fails only its own file, and the next file gets a fresh child.
+     * Children are replaced after files-per-worker files. A caller waits at most
+     * worker-wait-seconds for a free child and then fails, so its document is marked failed
+     * instead of queueing behind a slow file.
+     */
+    @Bean
+    public Parser extractionParser(AutoDetectParser tikaParser) {
+        if (!isolated) {
+            return tikaParser;
+        }
+        ForkParser forkParser = new ForkParser(TikaParserConfig.class.getClassLoader(), tikaParser);
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        forkParser.setJavaCommand(List.of(java, "-Xmx" + workerHeapMb + "m", "-Djava.awt.headless=true"));
+        forkParser.setPoolSize(workers);
+        forkParser.setServerParseTimeoutMillis(timeoutSeconds * 1000);
+        forkParser.setMaxFilesProcessedPerServer(filesPerWorker);
+        log.info("Tika extraction runs in up to {} child JVMs ({} MB heap, {} s timeout)",
+            workers, workerHeapMb, timeoutSeconds);
+        return new BoundedWaitParser(forkParser, workers, workerWaitSeconds);
+    }
+
+    /**
+     * Hands a parse to the wrapped parser only when one of its children is free within the wait
+     */
+    static class BoundedWaitParser extends ParserDecorator implements Closeable {
+
+        private final Semaphore children;
+        private final long waitSeconds;
+
+        BoundedWaitParser(Parser parser, int children, long waitSeconds) {
+            super(parser);
+            this.children = new Semaphore(children, true);
+            this.waitSeconds = waitSeconds;
+        }
+
+        @Override
+        public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws IOException, SAXException, TikaException {
+            try {
+                if (!children.tryAcquire(waitSeconds, TimeUnit.SECONDS)) {
+                    throw new TikaException("All extraction workers stayed busy for " + waitSeconds + " s");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TikaException("Interrupted while waiting for an extraction worker", e);
+            }
+            try {
+                super.parse(stream, handler, metadata, context);
+            } finally {
+                children.release();
+            }
+        }
+
+        /**
+         * Stops the child JVMs with the application context
+         */
+        @Override
+        public void close() throws IOException {
+            if (getWrappedParser() instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -1,32 +1,45 @@
 package com.korconstructions.controller;
 
+import com.korconstructions.dto.IndexProgressDTO;
 import com.korconstructions.model.Building;
 import com.korconstructions.model.Document;
 import com.korconstructions.model.DocumentType;
+import com.korconstructions.model.IndexStatus;
 import com.korconstructions.repository.BuildingRepository;
+import com.korconstructions.service.AnswerStreamingService;
+import com.korconstructions.service.ContentAddressedStorage;
+import com.korconstructions.service.DocumentIndexingService;
 import com.korconstructions.service.DocumentRAGService;
 import com.korconstructions.service.DocumentService;
+import com.korconstructions.service.DocumentTextExtractor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.File;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @RestController
@@ -36,11 +49,20 @@ public class DocumentController {
 
     private final DocumentService documentService;
     private final DocumentRAGService ragService;
+    private final DocumentIndexingService indexingService;
+    private final AnswerStreamingService answerStreamingService;
     private final BuildingRepository buildingRepository;
+    private final DocumentTextExtractor textExtractor;
+
+    // Enough for every magic-byte signature Tika checks
+    private static final int MIME_SNIFF_BYTES = 8192;
 
     @Value("${app.upload.documents-dir:/Users/elenikorovesi/Downloads/korConstructions/uploads/documents}")
     private String documentsUploadDir;
 
+    @Value("${app.upload.max-stream-size-mb:512}")
+    private long maxStreamSizeMb;
+
     @GetMapping
     public ResponseEntity<List<Document>> getAllDocuments() {
         return ResponseEntity.ok(documentService.getAllDocuments());
@@ -75,50 +97,103 @@ public class DocumentController {
             @RequestParam(value = "buildingId", required = false) Long buildingId) {
 
         try {
-            // Save file to disk
-            String filePath = documentService.saveUploadedFile(file, documentsUploadDir);
-
-            // Create document entity
-            Document document = new Document();
-            document.setTitle(title);
-            document.setDescription(description);
-            document.setType(type);
-            document.setFileName(file.getOriginalFilename());
-            document.setFilePath(filePath);
-            document.setMimeType(file.getContentType());
-            document.setFileSize(file.getSize());
+            // Save file to disk, once per distinct content
+            ContentAddressedStorage.StoredFile stored = documentService.saveUploadedFile(file, documentsUploadDir);
+            return createAndIndex(stored, file.getOriginalFilename(), file.getContentType(),
+                title, description, type, buildingId);
+
+        } catch (Exception e) {
+            log.error("Failed to upload document", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Upload with the file as the raw request body and the other fields as query parameters.
+     * The body is read once: it is hashed, its type detected from the leading bytes and written
+     * to disk as it arrives, so files above the multipart limit are never held in memory.
+     */
+    @PostMapping(value = "/stream", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<Document> uploadDocumentStream(
+            HttpServletRequest request,
+            @RequestParam("fileName") String fileName,
+            @RequestParam("title") String title,
+            @RequestParam(value = "description", required = false) String description,
+            @RequestParam("type") DocumentType type,
+            @RequestParam(value = "buildingId", required = false) Long buildingId) {
+
+        long maxBytes = maxStreamSizeMb * 1024 * 1024;
+        if (request.getContentLengthLong() > maxBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        try {
+            ByteBuffer head = ByteBuffer.allocate(MIME_SNIFF_BYTES);
+            ContentAddressedStorage.StoredFile stored = documentService.saveUploadedStream(
+                request.getInputStream(), documentsUploadDir, maxBytes, head);
+            String mimeType = textExtractor.detectMimeType(Arrays.copyOf(head.array(), head.position()), fileName);
+            log.info("Streamed upload {}: {} bytes, {}", fileName, stored.size(), mimeType);
+            return createAndIndex(stored, fileName, mimeType, title, description, type, buildingId);
+
+        } catch (MaxUploadSizeExceededException e) {
+            log.warn("Upload {} exceeds {} MB", fileName, maxStreamSizeMb);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            log.error("Failed to upload document", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 
+    private ResponseEntity<Document> createAndIndex(ContentAddressedStorage.StoredFile stored, String fileName,
+                                                    String mimeType, String title, String description,
+                                                    DocumentType type, Long buildingId) {
+        String filePath = stored.path().toString();
+
+        // Create document entity
+        Document document = new Document();
+        document.setTitle(title);
+        document.setDescription(description);
+        document.setType(type);
+        document.setFileName(fileName);
+        document.setFilePath(filePath);
+        document.setMimeType(mimeType);
+        document.setFileSize(stored.size());
+        document.setContentHash(stored.hash());
+
+        Document savedDocument;
+        try {
             if (buildingId != null) {
                 Building building = buildingRepository.findById(buildingId)
                     .orElseThrow(() -> new RuntimeException("Building not found"));
                 document.setBuilding(building);
             }
 
-            // Save document metadata first
-            Document savedDocument = documentService.saveDocument(document);
+            // Save document metadata first; indexing continues in the background
+            document.setIndexStatus(IndexStatus.PENDING);
+            savedDocument = documentService.saveDocument(document);
+        } finally {
+            documentService.settleUploadedFile(stored);
+        }
 
-            // Index document for RAG and extract text
-            File savedFile = new File(filePath);
-            String extractedText = null;
-            try {
-                extractedText = ragService.indexDocument(savedDocument, savedFile);
-                savedDocument.setExtractedText(extractedText);
-                log.info("Successfully extracted {} characters from document",
-                    extractedText != null ? extractedText.length() : 0);
-            } catch (Exception e) {
-                log.error("Failed to index document for RAG: {}", savedDocument.getId(), e);
-                savedDocument.setExtractedText("Error: " + e.getMessage());
-            }
+        try {
+            indexingService.submit(savedDocument, new File(filePath));
+        } catch (TaskRejectedException e) {
+            // Nothing is kept, so a retry does not leave failed copies behind
+            documentService.deleteDocument(savedDocument.getId());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
 
-            // Update document with extracted text
-            savedDocument = documentService.saveDocument(savedDocument);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(savedDocument);
+    }
 
-            return ResponseEntity.status(HttpStatus.CREATED).body(savedDocument);
+    @GetMapping("/{id}/index-status")
+    public ResponseEntity<IndexProgressDTO> getIndexStatus(@PathVariable Long id) {
+        return ResponseEntity.ok(indexingService.getStatus(id));
+    }
 
-        } catch (Exception e) {
-            log.error("Failed to upload document", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    @GetMapping(value = "/{id}/index-status/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamIndexStatus(@PathVariable Long id) {
+        return indexingService.subscribe(id);
     }
 
     @PutMapping("/{id}")
@@ -127,22 +202,42 @@ public class DocumentController {
             @RequestBody Document documentUpdates) {
 
         Document existingDocument = documentService.getDocumentById(id);
+        boolean metadataChanged = false;
 
         // Update fields
         if (documentUpdates.getTitle() != null) {
+            metadataChanged |= !documentUpdates.getTitle().equals(existingDocument.getTitle());
             existingDocument.setTitle(documentUpdates.getTitle());
         }
         if (documentUpdates.getDescription() != null) {
             existingDocument.setDescription(documentUpdates.getDescription());
         }
         if (documentUpdates.getType() != null) {
+            metadataChanged |= documentUpdates.getType() != existingDocument.getType();
             existingDocument.setType(documentUpdates.getType());
         }
         if (documentUpdates.getBuilding() != null) {
-            existingDocument.setBuilding(documentUpdates.getBuilding());
+            Building building = documentUpdates.getBuilding();
+            if (building.getId() != null) {
+                building = buildingRepository.findById(building.getId())
+                    .orElseThrow(() -> new RuntimeException("Building not found"));
+            }
+            Long previousBuildingId = existingDocument.getBuilding() != null ? existingDocument.getBuilding().getId() : null;
+            metadataChanged |= !Objects.equals(previousBuildingId, building.getId());
+            existingDocument.setBuilding(building);
         }
 
         Document updated = documentService.saveDocument(existingDocument);
+
+        // Chunk metadata feeds the building filter, keep it in step without re-embedding
+        if (metadataChanged) {
+            try {
+                ragService.updateDocumentMetadata(updated);
+            } catch (Exception e) {
+                log.error("Failed to update chunk metadata for document {}", id, e);
+            }
+        }
+
         return ResponseEntity.ok(updated);
     }
 
@@ -158,9 +253,16 @@ public class DocumentController {
             @RequestBody Map<String, Object> request) {
 
         String question = (String) request.get("question");
-        Long buildingId = request.get("buildingId") != null
-            ? Long.valueOf(request.get("buildingId").toString())
-            : null;
+        Long buildingId;
+        DocumentType type;
+        try {
+            buildingId = parseBuildingId(request);
+            type = parseType(request);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
 
         if (question == null || question.trim().isEmpty()) {
             Map<String, String> error = new HashMap<>();
@@ -168,7 +270,7 @@ public class DocumentController {
             return ResponseEntity.badRequest().body(error);
         }
 
-        String answer = ragService.askQuestion(question, buildingId);
+        String answer = ragService.askQuestion(question, buildingId, type);
 
         Map<String, String> response = new HashMap<>();
         response.put("question", question);
@@ -177,6 +279,55 @@ public class DocumentController {
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> askQuestionStream(
+            @RequestBody Map<String, Object> request) {
+
+        String question = (String) request.get("question");
+        if (question == null || question.trim().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Long buildingId;
+        DocumentType type;
+        try {
+            buildingId = parseBuildingId(request);
+            type = parseType(request);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(answerStreamingService.streamQuestion(question, buildingId, type));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the value is not a number
+     */
+    private Long parseBuildingId(Map<String, Object> request) {
+        if (request.get("buildingId") == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(request.get("buildingId").toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid building id: " + request.get("buildingId"));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the value is not a document type
+     */
+    private DocumentType parseType(Map<String, Object> request) {
+        if (request.get("type") == null || request.get("type").toString().isEmpty()) {
+            return null;
+        }
+        try {
+            return DocumentType.valueOf(request.get("type").toString());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown document type: " + request.get("type"));
+        }
+    }
+
     @GetMapping("/{id}/download")
     public ResponseEntity<Resource> downloadDocument(
             @PathVariable Long id,
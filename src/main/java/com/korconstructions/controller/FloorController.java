@@ -3,20 +3,15 @@ package com.korconstructions.controller;
 import com.korconstructions.model.Floor;
 import com.korconstructions.service.FloorService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/floors")
@@ -24,9 +19,6 @@ public class FloorController {
 
     private final FloorService floorService;
 
-    @Value("${app.upload.floor-dir:./uploads/floors}")
-    private String uploadDir;
-
     @Autowired
     public FloorController(FloorService floorService) {
         this.floorService = floorService;
@@ -83,30 +75,7 @@ public class FloorController {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            // Create upload directory if it doesn't exist
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            // Generate unique filename
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".")
-                    ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                    : ".jpg";
-            String filename = UUID.randomUUID().toString() + extension;
-            Path filePath = uploadPath.resolve(filename);
-
-            // Save file
-            file.transferTo(filePath.toFile());
-
-            // Update floor with image path
-            Floor floor = floorService.getFloorById(id)
-                    .orElseThrow(() -> new RuntimeException("Floor not found"));
-            // Use web-accessible path (remove ./ prefix)
-            String webPath = "/uploads/floors/" + filename;
-            floor.setImagePath(webPath);
-            floorService.updateFloor(id, floor);
+            Floor floor = floorService.updateFloorImage(id, file);
 
             response.put("success", true);
             response.put("message", "Image uploaded successfully");
@@ -0,0 +1,149 @@
+package com.korconstructions.controller;
+
+import com.korconstructions.repository.HnswVectorStore;
+import com.korconstructions.service.AnswerCacheService;
+import com.korconstructions.service.EmbeddingCacheService;
+import com.korconstructions.service.ExtractedTextCache;
+import com.korconstructions.service.ExtractionBenchmarkService;
+import com.korconstructions.service.ExtractionMemoryBudget;
+import com.korconstructions.service.LexicalIndex;
+import com.korconstructions.service.PdfOcrService;
+import com.korconstructions.service.QueryEmbeddingCache;
+import com.korconstructions.service.VectorIndexMaintenanceService;
+import com.korconstructions.service.VectorQuantizationService;
+import com.korconstructions.service.VectorStoreReconciliationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/rag")
+@RequiredArgsConstructor
+public class RagAdminController {
+
+    private final EmbeddingCacheService embeddingCacheService;
+    private final VectorStoreReconciliationService reconciliationService;
+    private final LexicalIndex lexicalIndex;
+    private final AnswerCacheService answerCacheService;
+    private final QueryEmbeddingCache queryEmbeddingCache;
+    private final ObjectProvider<HnswVectorStore> hnswVectorStore;
+    private final ObjectProvider<VectorQuantizationService> quantizationService;
+    private final ObjectProvider<VectorIndexMaintenanceService> indexMaintenanceService;
+    private final ExtractionBenchmarkService extractionBenchmarkService;
+    private final ExtractionMemoryBudget extractionMemoryBudget;
+    private final ExtractedTextCache extractedTextCache;
+    private final PdfOcrService pdfOcrService;
+
+    @GetMapping("/embedding-cache")
+    public ResponseEntity<Map<String, Object>> getEmbeddingCacheStats() {
+        return ResponseEntity.ok(embeddingCacheService.getStats());
+    }
+
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileVectorStore() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("removedChunks", reconciliationService.reconcile());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/lexical-index")
+    public ResponseEntity<Map<String, Object>> getLexicalIndexStats() {
+        return ResponseEntity.ok(lexicalIndex.getStats());
+    }
+
+    @PostMapping("/lexical-index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildLexicalIndex() {
+        lexicalIndex.rebuild();
+        return ResponseEntity.ok(lexicalIndex.getStats());
+    }
+
+    @GetMapping("/answer-cache")
+    public ResponseEntity<Map<String, Object>> getAnswerCacheStats() {
+        return ResponseEntity.ok(answerCacheService.getStats());
+    }
+
+    @PostMapping("/answer-cache/clear")
+    public ResponseEntity<Map<String, Object>> clearAnswerCache() {
+        answerCacheService.clear();
+        return ResponseEntity.ok(answerCacheService.getStats());
+    }
+
+    @GetMapping("/query-embedding-cache")
+    public ResponseEntity<Map<String, Object>> getQueryEmbeddingCacheStats() {
+        return ResponseEntity.ok(queryEmbeddingCache.getStats());
+    }
+
+    @GetMapping("/vector-store")
+    public ResponseEntity<Map<String, Object>> getVectorStoreStats() {
+        HnswVectorStore store = hnswVectorStore.getIfAvailable();
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", store != null ? "hnsw" : "pgvector");
+        if (store != null) {
+            response.putAll(store.getStats());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/quantization/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkQuantization(@RequestParam(defaultValue = "50") int queries,
+                                                                     @RequestParam(defaultValue = "10") int topK) {
+        VectorQuantizationService service = quantizationService.getIfAvailable();
+        if (service == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Η σύγκριση κβαντισμού είναι διαθέσιμη μόνο με pgvector");
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(service.benchmark(queries, topK));
+    }
+
+    @GetMapping("/vector-index")
+    public ResponseEntity<Map<String, Object>> getVectorIndexStatus() {
+        VectorIndexMaintenanceService service = indexMaintenanceService.getIfAvailable();
+        if (service == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Η συντήρηση ευρετηρίου IVFFLAT είναι διαθέσιμη μόνο με pgvector");
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.ok(service.getStatus());
+    }
+
+    @PostMapping("/vector-index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildVectorIndex(@RequestParam(defaultValue = "false") boolean force) {
+        VectorIndexMaintenanceService service = indexMaintenanceService.getIfAvailable();
+        if (service == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("error", "Η συντήρηση ευρετηρίου IVFFLAT είναι διαθέσιμη μόνο με pgvector");
+            return ResponseEntity.badRequest().body(response);
+        }
+        service.check(force);
+        return ResponseEntity.ok(service.getStatus());
+    }
+
+    @PostMapping("/extraction/benchmark")
+    public ResponseEntity<Map<String, Object>> benchmarkExtraction(@RequestParam(defaultValue = "10") int perType) {
+        return ResponseEntity.ok(extractionBenchmarkService.benchmark(perType));
+    }
+
+    @GetMapping("/extraction/memory")
+    public ResponseEntity<Map<String, Object>> getExtractionMemoryStats() {
+        return ResponseEntity.ok(extractionMemoryBudget.getStats());
+    }
+
+    @GetMapping("/extraction/ocr")
+    public ResponseEntity<Map<String, Object>> getOcrStats() {
+        return ResponseEntity.ok(pdfOcrService.getStats());
+    }
+
+    @GetMapping("/extraction-cache")
+    public ResponseEntity<Map<String, Object>> getExtractionCacheStats() {
+        return ResponseEntity.ok(extractedTextCache.getStats());
+    }
+}
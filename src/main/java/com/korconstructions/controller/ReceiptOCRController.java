@@ -1,6 +1,7 @@
 package com.korconstructions.controller;
 
 import com.korconstructions.model.ReceiptOcrData;
+import com.korconstructions.service.ContentAddressedStorage;
 import com.korconstructions.service.ReceiptAnalyzerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +13,11 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/receipts/ocr")
@@ -29,6 +29,9 @@ public class ReceiptOCRController {
     @Autowired
     private ReceiptAnalyzerService receiptAnalyzerService;
 
+    @Autowired
+    private ContentAddressedStorage storage;
+
     @Value("${app.upload.dir:./uploads/receipts}")
     private String uploadDir;
 
@@ -52,22 +55,10 @@ public class ReceiptOCRController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // Create upload directory if it doesn't exist
+            // Save file under its content hash; a receipt photographed once is stored once
             Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            // Generate unique filename
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".")
-                    ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                    : ".jpg";
-            String uniqueFilename = UUID.randomUUID().toString() + extension;
-            Path filePath = uploadPath.resolve(uniqueFilename);
-
-            // Save file
-            file.transferTo(filePath.toFile());
+            Path filePath = store(file, uploadPath);
+            String uniqueFilename = uploadPath.relativize(filePath).toString().replace('\\', '/');
             logger.info("File saved: {}", filePath);
 
             // Analyze with AI Vision
@@ -113,13 +104,8 @@ public class ReceiptOCRController {
 
             // Save file temporarily
             Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            String uniqueFilename = UUID.randomUUID().toString() + ".jpg";
-            Path filePath = uploadPath.resolve(uniqueFilename);
-            file.transferTo(filePath.toFile());
+            Path filePath = store(file, uploadPath);
+            String uniqueFilename = uploadPath.relativize(filePath).toString().replace('\\', '/');
 
             // Extract all data
             ReceiptOcrData ocrData = receiptAnalyzerService.extractAllReceiptData(filePath.toFile());
@@ -137,4 +123,14 @@ public class ReceiptOCRController {
             return ResponseEntity.internalServerError().body(response);
         }
     }
+
+    private Path store(MultipartFile file, Path uploadPath) throws IOException {
+        ContentAddressedStorage.StoredFile stored;
+        try (InputStream in = file.getInputStream()) {
+            stored = storage.store(in, uploadPath);
+        }
+        // Receipts are not saved as rows, nothing waits for them
+        storage.settle(stored);
+        return stored.path();
+    }
 }
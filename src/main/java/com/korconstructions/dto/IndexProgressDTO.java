@@ -0,0 +1,23 @@
+package com.korconstructions.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.korconstructions.model.IndexStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IndexProgressDTO {
+    private Long documentId;
+    private IndexStatus status;
+    private Integer completedBatches;
+    private Integer totalBatches;
+    private String message;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime updatedAt;
+}
@@ -12,7 +12,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = @Index(name = "idx_documents_content_hash", columnList = "contentHash"))
 public class Document {
 
     @Id
@@ -32,9 +32,16 @@ public class Document {
     private String mimeType;
     private Long fileSize;
 
+    // SHA-256 of the file, shared by documents uploaded with the same contents
+    @Column(length = 64)
+    private String contentHash;
+
     @Column(columnDefinition = "TEXT")
     private String extractedText;
 
+    @Enumerated(EnumType.STRING)
+    private IndexStatus indexStatus;
+
     @ManyToOne
     @JoinColumn(name = "building_id")
     private Building building;
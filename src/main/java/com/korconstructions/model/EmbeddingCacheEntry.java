@@ -0,0 +1,38 @@
+package com.korconstructions.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "embedding_cache")
+public class EmbeddingCacheEntry {
+
+    // SHA-256 of model name + normalized chunk text
+    @Id
+    @Column(length = 64)
+    private String contentHash;
+
+    private String model;
+
+    private Integer dimensions;
+
+    // float32 little-endian
+    @Column(columnDefinition = "bytea")
+    private byte[] embedding;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,14 @@
+package com.korconstructions.model;
+
+public enum IndexStatus {
+    PENDING,     // Σε αναμονή
+    EXTRACTING,  // Εξαγωγή κειμένου
+    CHUNKING,    // Τεμαχισμός
+    EMBEDDING,   // Δημιουργία embeddings
+    COMPLETED,   // Ολοκληρώθηκε
+    FAILED;      // Απέτυχε
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED;
+    }
+}
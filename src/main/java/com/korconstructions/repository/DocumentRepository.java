@@ -2,14 +2,37 @@ package com.korconstructions.repository;
 
 import com.korconstructions.model.Document;
 import com.korconstructions.model.DocumentType;
+import com.korconstructions.model.IndexStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
     List<Document> findByType(DocumentType type);
     List<Document> findByBuildingId(Long buildingId);
     List<Document> findByTitleContainingIgnoreCase(String title);
+
+    @Query("SELECT d.id FROM Document d")
+    List<Long> findAllIds();
+
+    long countByFilePath(String filePath);
+
+    Optional<Document> findFirstByContentHashAndIndexStatusAndIdNot(String contentHash, IndexStatus indexStatus, Long id);
+
+    // Indexing only writes its own columns, so edits made while a document is indexed are kept
+    @Modifying
+    @Query("UPDATE Document d SET d.indexStatus = :status, d.updatedAt = :now WHERE d.id = :id")
+    int updateIndexStatus(@Param("id") Long id, @Param("status") IndexStatus status, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE Document d SET d.indexStatus = :status, d.extractedText = :text, d.updatedAt = :now WHERE d.id = :id")
+    int updateIndexResult(@Param("id") Long id, @Param("status") IndexStatus status, @Param("text") String text,
+                          @Param("now") LocalDateTime now);
 }
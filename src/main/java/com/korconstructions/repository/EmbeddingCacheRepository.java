@@ -0,0 +1,26 @@
+package com.korconstructions.repository;
+
+import com.korconstructions.model.EmbeddingCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface EmbeddingCacheRepository extends JpaRepository<EmbeddingCacheEntry, String> {
+
+    // save() would merge (select, then insert) and still fail when two batches insert the same text;
+    // the database settles that race instead
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO embedding_cache (content_hash, model, dimensions, embedding, created_at) "
+        + "VALUES (:contentHash, :model, :dimensions, :embedding, :createdAt) "
+        + "ON CONFLICT (content_hash) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("contentHash") String contentHash, @Param("model") String model,
+                       @Param("dimensions") int dimensions, @Param("embedding") byte[] embedding,
+                       @Param("createdAt") LocalDateTime createdAt);
+}
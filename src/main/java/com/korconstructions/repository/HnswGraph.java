@@ -0,0 +1,458 @@
+package com.korconstructions.repository;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over the vectors of a
+ * MappedVectorFile. Node ids are vector slots. Nodes are never removed; the caller
+ * filters deleted slots out of the results. Not thread-safe: search may run concurrently,
+ * insert needs exclusive access.
+ *
+ * Both building and searching compare full-precision vectors, so the similarities in the
+ * graph and in the results are exact.
+ */
+class HnswGraph {
+
+    private static final int MAGIC = 0x4B484E53; // "KHNS"
+    private static final int VERSION = 2;
+
+    private final MappedVectorFile vectors;
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    // links[node][level] = {count, neighbour, neighbour, ...}; null for slots not in the graph
+    private int[][][] links = new int[1024][][];
+    // similarities[node][level][i] = similarity of node and links[node][level][i + 1]
+    private float[][][] similarities = new float[1024][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int nodeCount;
+
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    /**
+     * A node and its cosine similarity to the query
+     */
+    record Scored(int node, float similarity) {
+    }
+
+    HnswGraph(MappedVectorFile vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxConnections0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    int size() {
+        return nodeCount;
+    }
+
+    boolean contains(int node) {
+        return node < links.length && links[node] != null;
+    }
+
+    void insert(int node) {
+        if (contains(node)) {
+            return;
+        }
+        ensureCapacity(node + 1);
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        int[][] nodeLinks = new int[level + 1][];
+        float[][] nodeSimilarities = new float[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + maxConnections(l)];
+            nodeSimilarities[l] = new float[maxConnections(l)];
+        }
+        links[node] = nodeLinks;
+        similarities[node] = nodeSimilarities;
+        float[] vector = vectors.read(node);
+        nodeCount++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        Scored entry = new Scored(entryPoint, vectors.dot(vector, entryPoint));
+        for (int l = maxLevel; l > level; l--) {
+            entry = greedy(vector, entry, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Scored> candidates = searchLayer(vector, entry, efConstruction, l, null);
+            List<Scored> selected = selectNeighbours(candidates, maxConnections(l), node);
+            int[] own = links[node][l];
+            float[] ownSimilarities = similarities[node][l];
+            own[0] = selected.size();
+            for (int i = 0; i < selected.size(); i++) {
+                int neighbour = selected.get(i).node();
+                float similarity = selected.get(i).similarity();
+                own[i + 1] = neighbour;
+                ownSimilarities[i] = similarity;
+                addLink(neighbour, node, l, similarity);
+            }
+            entry = candidates.get(0);
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Approximate nearest neighbours of a normalized query, best first, with exact similarities
+     * @param ef beam width
+     * @param accept which nodes may appear in the result; others are still traversed
+     */
+    List<Scored> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        Scored entry = new Scored(entryPoint, vectors.dot(query, entryPoint));
+        for (int l = maxLevel; l > 0; l--) {
+            entry = greedy(query, entry, l);
+        }
+        List<Scored> found = searchLayer(query, entry, Math.max(ef, k), 0, accept);
+        return found.size() > k ? found.subList(0, k) : found;
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnections0 : m;
+    }
+
+    private Scored greedy(float[] target, Scored entry, int level) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[entry.node()][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float similarity = vectors.dot(target, neighbours[i]);
+                if (similarity > entry.similarity()) {
+                    entry = new Scored(neighbours[i], similarity);
+                    improved = true;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Best-first search of one layer. The beam holds the ef best nodes seen and decides
+     * when to stop; with a filter, only accepted nodes are collected into the result.
+     */
+    private List<Scored> searchLayer(float[] target, Scored entry, int ef, int level, IntPredicate accept) {
+        Visited seen = visited.get();
+        seen.reset(links.length);
+        seen.mark(entry.node());
+
+        Heap candidates = new Heap(ef * 2, true);
+        Heap beam = new Heap(ef + 1, false);
+        Heap result = accept != null ? new Heap(ef + 1, false) : beam;
+        candidates.push(entry.node(), entry.similarity());
+        beam.push(entry.node(), entry.similarity());
+        if (accept != null && accept.test(entry.node())) {
+            result.push(entry.node(), entry.similarity());
+        }
+
+        while (candidates.size() > 0) {
+            float best = candidates.topScore();
+            if (beam.size() >= ef && best < beam.topScore()) {
+                break;
+            }
+            int current = candidates.pop();
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!seen.mark(neighbour)) {
+                    continue;
+                }
+                float similarity = vectors.dot(target, neighbour);
+                if (beam.size() < ef || similarity > beam.topScore()) {
+                    candidates.push(neighbour, similarity);
+                    beam.push(neighbour, similarity);
+                    if (beam.size() > ef) {
+                        beam.pop();
+                    }
+                }
+                if (accept != null && accept.test(neighbour)
+                        && (result.size() < ef || similarity > result.topScore())) {
+                    result.push(neighbour, similarity);
+                    if (result.size() > ef) {
+                        result.pop();
+                    }
+                }
+            }
+        }
+        return result.drainBestFirst();
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the new node
+     * than to every neighbour already kept, which spreads links in different directions.
+     * Pruned candidates fill any remaining places.
+     */
+    private List<Scored> selectNeighbours(List<Scored> candidates, int max, int self) {
+        List<Scored> selected = new ArrayList<>(max);
+        List<Scored> pruned = new ArrayList<>();
+        for (Scored candidate : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            if (candidate.node() == self) {
+                continue;
+            }
+            boolean keep = true;
+            for (Scored kept : selected) {
+                if (vectors.dot(candidate.node(), kept.node()) > candidate.similarity()) {
+                    keep = false;
+                    break;
+                }
+            }
+            (keep ? selected : pruned).add(candidate);
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Back link from an existing node. When its list is full the heuristic picks which links
+     * to keep, so the few links that lead to other regions are not the ones dropped (replacing
+     * the weakest link cuts clusters of similar chunks off from the rest of the graph).
+     */
+    private void addLink(int node, int neighbour, int level, float similarity) {
+        int[] nodeLinks = links[node][level];
+        float[] nodeSimilarities = similarities[node][level];
+        int max = maxConnections(level);
+        if (nodeLinks[0] < max) {
+            nodeSimilarities[nodeLinks[0]] = similarity;
+            nodeLinks[++nodeLinks[0]] = neighbour;
+            return;
+        }
+        List<Scored> candidates = new ArrayList<>(max + 1);
+        for (int i = 0; i < nodeLinks[0]; i++) {
+            candidates.add(new Scored(nodeLinks[i + 1], nodeSimilarities[i]));
+        }
+        candidates.add(new Scored(neighbour, similarity));
+        candidates.sort((a, b) -> Float.compare(b.similarity(), a.similarity()));
+        List<Scored> kept = selectNeighbours(candidates, max, node);
+        nodeLinks[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            nodeLinks[i + 1] = kept.get(i).node();
+            nodeSimilarities[i] = kept.get(i).similarity();
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > links.length) {
+            int capacity = Math.max(size, links.length * 2);
+            links = Arrays.copyOf(links, capacity);
+            similarities = Arrays.copyOf(similarities, capacity);
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(m);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        int highest = links.length;
+        while (highest > 0 && links[highest - 1] == null) {
+            highest--;
+        }
+        out.writeInt(highest);
+        for (int node = 0; node < highest; node++) {
+            int[][] nodeLinks = links[node];
+            if (nodeLinks == null) {
+                out.writeInt(0);
+                continue;
+            }
+            out.writeInt(nodeLinks.length);
+            for (int l = 0; l < nodeLinks.length; l++) {
+                int[] level = nodeLinks[l];
+                out.writeInt(level[0]);
+                for (int i = 1; i <= level[0]; i++) {
+                    out.writeInt(level[i]);
+                    out.writeFloat(similarities[node][l][i - 1]);
+                }
+            }
+        }
+    }
+
+    void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an HNSW graph file");
+        }
+        if (in.readInt() != m) {
+            throw new IOException("HNSW graph was built with a different M");
+        }
+        int entry = in.readInt();
+        int top = in.readInt();
+        int highest = in.readInt();
+        if (highest > vectors.getCount()) {
+            throw new IOException("HNSW graph references missing vectors");
+        }
+        int[][][] loaded = new int[Math.max(1024, highest)][][];
+        float[][][] loadedSimilarities = new float[loaded.length][][];
+        int count = 0;
+        for (int node = 0; node < highest; node++) {
+            int levels = in.readInt();
+            if (levels == 0) {
+                continue;
+            }
+            int[][] nodeLinks = new int[levels][];
+            float[][] nodeSimilarities = new float[levels][];
+            for (int l = 0; l < levels; l++) {
+                int size = in.readInt();
+                int[] level = new int[1 + maxConnections(l)];
+                float[] levelSimilarities = new float[maxConnections(l)];
+                level[0] = size;
+                for (int i = 1; i <= size; i++) {
+                    level[i] = in.readInt();
+                    levelSimilarities[i - 1] = in.readFloat();
+                }
+                nodeLinks[l] = level;
+                nodeSimilarities[l] = levelSimilarities;
+            }
+            loaded[node] = nodeLinks;
+            loadedSimilarities[node] = nodeSimilarities;
+            count++;
+        }
+        links = loaded;
+        similarities = loadedSimilarities;
+        entryPoint = entry;
+        maxLevel = top;
+        nodeCount = count;
+    }
+
+    /**
+     * Visited marks reused across searches of one thread
+     */
+    private static class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[size];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return true if the node was not visited yet
+         */
+        boolean mark(int node) {
+            if (marks[node] == epoch) {
+                return false;
+            }
+            marks[node] = epoch;
+            return true;
+        }
+    }
+
+    /**
+     * Binary heap of (node, similarity); a max-heap pops the most similar node,
+     * a min-heap the least similar one
+     */
+    private static class Heap {
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+        private final boolean max;
+
+        Heap(int capacity, boolean max) {
+            this.nodes = new int[Math.max(capacity, 4)];
+            this.scores = new float[nodes.length];
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            int node = nodes[size];
+            float score = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                    child++;
+                }
+                if (!before(scores[child], score)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+
+        /**
+         * Empty a min-heap into a list ordered from most to least similar
+         */
+        List<Scored> drainBestFirst() {
+            Scored[] ordered = new Scored[size];
+            for (int i = size - 1; i >= 0; i--) {
+                float score = scores[0];
+                ordered[i] = new Scored(pop(), score);
+            }
+            return Arrays.asList(ordered);
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package com.korconstructions.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Vector store that needs no database: embeddings live in a memory-mapped float file,
+ * an in-process HNSW graph answers similarity searches, and chunk text and metadata are
+ * kept in memory and persisted as an append-only JSON-lines log.
+ * The graph is checkpointed to disk so startup only replays the log written since.
+ * Selected with app.vectorstore.type=hnsw (see application-hnsw.properties).
+ *
+ * Files under app.vectorstore.hnsw.directory, per generation N (bumped by compaction, so a
+ * still-mapped file never has to be replaced, which Windows does not allow):
+ * vectors-N.f32, chunks-N.jsonl, graph-N.bin, and CURRENT holding N.
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStore implements VectorStore, VectorChunkRepository {
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    // One entry per line, whatever spring.jackson.serialization.indent-output says
+    private final ObjectWriter entryWriter;
+    private final Path directory;
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object checkpointWrite = new Object();
+
+    private int generation;
+    private MappedVectorFile vectors;
+    private HnswGraph graph;
+    private Writer logWriter;
+    private long logSequence;
+    private long checkpointSequence;
+    private volatile boolean closed;
+
+    // Slot -> chunk, null for slots never committed to the log
+    private final List<ChunkRecord> records = new ArrayList<>();
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int liveCount;
+
+    private static class ChunkRecord {
+        final String id;
+        final String content;
+        Map<String, Object> metadata;
+
+        ChunkRecord(String id, String content, Map<String, Object> metadata) {
+            this.id = id;
+            this.content = content;
+            this.metadata = metadata;
+        }
+    }
+
+    @Autowired
+    public HnswVectorStore(EmbeddingModel embeddingModel,
+                           ObjectMapper objectMapper,
+                           @Value("${app.vectorstore.hnsw.directory:./data/vectors}") String directory,
+                           @Value("${app.vectorstore.hnsw.dimensions:1536}") int dimensions,
+                           @Value("${app.vectorstore.hnsw.m:16}") int m,
+                           @Value("${app.vectorstore.hnsw.ef-construction:100}") int efConstruction,
+                           @Value("${app.vectorstore.hnsw.ef-search:100}") int efSearch) {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.entryWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.directory = Path.of(directory);
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        long start = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        Path current = directory.resolve("CURRENT");
+        generation = Files.exists(current) ? Integer.parseInt(Files.readString(current).trim()) : 1;
+        load();
+        deleteOtherGenerations();
+        log.info("HNSW vector store opened: {} chunks ({} deleted slots) in {} ms",
+            liveCount, deleted.cardinality(), System.currentTimeMillis() - start);
+
+        // Tombstones are only reclaimed here, before any search runs
+        if (deleted.cardinality() > 1000 && deleted.cardinality() > liveCount) {
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        vectors = new MappedVectorFile(file("vectors", "f32"), dimensions);
+        records.clear();
+        slotsById.clear();
+        deleted.clear();
+        liveCount = 0;
+
+        graph = new HnswGraph(vectors, m, efConstruction);
+        checkpointSequence = readCheckpoint();
+        boolean graphLoaded = checkpointSequence >= 0;
+
+        List<Integer> pendingInserts = new ArrayList<>();
+        logSequence = replayLog(graphLoaded ? checkpointSequence : -1, pendingInserts);
+        if (graphLoaded && checkpointSequence > logSequence) {
+            // The log lost entries the graph already has (truncated after a crash)
+            graph = new HnswGraph(vectors, m, efConstruction);
+            graphLoaded = false;
+            pendingInserts.clear();
+            for (int slot = 0; slot < records.size(); slot++) {
+                if (records.get(slot) != null) {
+                    pendingInserts.add(slot);
+                }
+            }
+        }
+        if (!graphLoaded) {
+            log.info("No usable HNSW graph checkpoint, building the graph from {} vectors", pendingInserts.size());
+            checkpointSequence = 0;
+        }
+        for (int slot : pendingInserts) {
+            if (!deleted.get(slot)) {
+                graph.insert(slot);
+            }
+        }
+        logWriter = Files.newBufferedWriter(file("chunks", "jsonl"), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Apply the chunk log to the in-memory records
+     * @param graphSequence log entries up to this one are already in the graph checkpoint
+     * @param pendingInserts receives the slots the graph still lacks
+     * @return number of log entries applied
+     */
+    private long replayLog(long graphSequence, List<Integer> pendingInserts) throws IOException {
+        Path logFile = file("chunks", "jsonl");
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+        long sequence = 0;
+        long validBytes = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LogEntry entry;
+                try {
+                    entry = objectMapper.readValue(line, LogEntry.class);
+                } catch (JsonProcessingException e) {
+                    // A crash can leave a partial last line; drop it and everything after
+                    log.warn("Truncating HNSW chunk log at entry {}: {}", sequence + 1, e.getOriginalMessage());
+                    break;
+                }
+                if ("put".equals(entry.op) && entry.slot >= vectors.getCount()) {
+                    log.warn("HNSW chunk log references missing vector slot {}, truncating", entry.slot);
+                    break;
+                }
+                sequence++;
+                validBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                apply(entry);
+                if ("put".equals(entry.op) && sequence > graphSequence) {
+                    pendingInserts.add(entry.slot);
+                }
+            }
+        }
+        if (validBytes < Files.size(logFile)) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+        return sequence;
+    }
+
+    private void apply(LogEntry entry) {
+        switch (entry.op) {
+            case "put" -> {
+                Integer previous = slotsById.put(entry.id, entry.slot);
+                if (previous != null) {
+                    markDeleted(previous);
+                }
+                while (records.size() <= entry.slot) {
+                    records.add(null);
+                    deleted.set(records.size() - 1);
+                }
+                records.set(entry.slot, new ChunkRecord(entry.id, entry.content, entry.metadata));
+                deleted.clear(entry.slot);
+                liveCount++;
+            }
+            case "delete" -> {
+                Integer slot = slotsById.remove(entry.id);
+                if (slot != null) {
+                    markDeleted(slot);
+                }
+            }
+            case "metadata" -> {
+                Integer slot = slotsById.get(entry.id);
+                if (slot != null) {
+                    records.get(slot).metadata = entry.metadata;
+                }
+            }
+            default -> log.warn("Unknown HNSW chunk log entry: {}", entry.op);
+        }
+    }
+
+    private void markDeleted(int slot) {
+        if (!deleted.get(slot)) {
+            deleted.set(slot);
+            records.set(slot, null);
+            liveCount--;
+        }
+    }
+
+    /**
+     * One line of the chunk log
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class LogEntry {
+        public String op;
+        public String id;
+        public int slot;
+        public String content;
+        public Map<String, Object> metadata;
+
+        LogEntry() {
+        }
+
+        LogEntry(String op, String id, int slot, String content, Map<String, Object> metadata) {
+            this.op = op;
+            this.id = id;
+            this.slot = slot;
+            this.content = content;
+            this.metadata = metadata;
+        }
+    }
+
+    private void append(LogEntry entry) throws IOException {
+        logWriter.write(entryWriter.writeValueAsString(entry));
+        logWriter.write('\n');
+        logSequence++;
+    }
+
+    // --- VectorStore ---
+
+    @Override
+    public void add(List<Document> documents) {
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getContent).toList());
+        insert(documents, embeddings);
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = false;
+            for (String id : idList) {
+                if (slotsById.containsKey(id)) {
+                    append(new LogEntry("delete", id, 0, null, null));
+                    apply(new LogEntry("delete", id, 0, null, null));
+                    removed = true;
+                }
+            }
+            logWriter.flush();
+            return Optional.of(removed);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete chunks from the HNSW store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        Predicate<Map<String, Object>> filter = request.hasFilterExpression()
+            ? MetadataFilter.compile(request.getFilterExpression())
+            : null;
+        int topK = request.getTopK();
+
+        lock.readLock().lock();
+        try {
+            IntPredicate accept = slot -> slot < records.size() && !deleted.get(slot)
+                && (filter == null || filter.test(records.get(slot).metadata));
+            List<HnswGraph.Scored> found = graph.search(query, topK, Math.max(efSearch, topK), accept);
+            if (found.size() < topK && filter != null) {
+                // A selective filter can leave the beam with too few matches; scan the matches exactly
+                found = exactSearch(query, topK, accept);
+            }
+
+            List<Document> results = new ArrayList<>(found.size());
+            for (HnswGraph.Scored scored : found) {
+                if (scored.similarity() < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                ChunkRecord record = records.get(scored.node());
+                Map<String, Object> metadata = new HashMap<>(record.metadata);
+                metadata.put("distance", 1.0f - scored.similarity());
+                results.add(new Document(record.id, record.content, metadata));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<HnswGraph.Scored> exactSearch(float[] query, int topK, IntPredicate accept) {
+        List<HnswGraph.Scored> matches = new ArrayList<>();
+        for (int slot = 0; slot < records.size(); slot++) {
+            if (accept.test(slot)) {
+                matches.add(new HnswGraph.Scored(slot, vectors.dot(query, slot)));
+            }
+        }
+        matches.sort((a, b) -> Float.compare(b.similarity(), a.similarity()));
+        return matches.size() > topK ? matches.subList(0, topK) : matches;
+    }
+
+    // --- VectorChunkRepository ---
+
+    @Override
+    public void insert(List<Document> chunks, List<float[]> embeddings) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                Document chunk = chunks.get(i);
+                int slot = vectors.append(embeddings.get(i));
+                LogEntry entry = new LogEntry("put", chunk.getId(), slot, chunk.getContent(),
+                    new HashMap<>(chunk.getMetadata()));
+                append(entry);
+                apply(entry);
+                graph.insert(slot);
+            }
+            logWriter.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write chunks to the HNSW store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void ensureMetadataIndexes() {
+        // Metadata is filtered in memory; nothing to index
+    }
+
+    @Override
+    public int updateDocumentMetadata(Long documentId, Map<String, Object> metadata, List<String> removedKeys) {
+        return updateMetadata("document_id", documentId.toString(), current -> {
+            removedKeys.forEach(current::remove);
+            current.putAll(metadata);
+        });
+    }
+
+    @Override
+    public List<Document> copyDocumentChunks(Long sourceDocumentId, Map<String, Object> metadata,
+                                             List<String> removedKeys) {
+        List<Document> copies = new ArrayList<>();
+        List<float[]> embeddings = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            String value = sourceDocumentId.toString();
+            for (int slot = 0; slot < records.size(); slot++) {
+                ChunkRecord record = records.get(slot);
+                if (record != null && value.equals(String.valueOf(record.metadata.get("document_id")))) {
+                    Map<String, Object> copyMetadata = new HashMap<>(record.metadata);
+                    removedKeys.forEach(copyMetadata::remove);
+                    copyMetadata.putAll(metadata);
+                    copies.add(new Document(UUID.randomUUID().toString(), record.content, copyMetadata));
+                    embeddings.add(vectors.read(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!copies.isEmpty()) {
+            insert(copies, embeddings);
+        }
+        return copies;
+    }
+
+    @Override
+    public int updateBuildingName(Long buildingId, String buildingName) {
+        return updateMetadata("building_id", buildingId.toString(), current -> current.put("building_name", buildingName));
+    }
+
+    private int updateMetadata(String key, String value, Consumer<Map<String, Object>> change) {
+        lock.writeLock().lock();
+        try {
+            int updated = 0;
+            for (ChunkRecord record : records) {
+                if (record != null && value.equals(String.valueOf(record.metadata.get(key)))) {
+                    Map<String, Object> metadata = new HashMap<>(record.metadata);
+                    change.accept(metadata);
+                    LogEntry entry = new LogEntry("metadata", record.id, 0, null, metadata);
+                    append(entry);
+                    apply(entry);
+                    updated++;
+                }
+            }
+            logWriter.flush();
+            return updated;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update chunk metadata in the HNSW store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> findByIds(Collection<String> ids) {
+        lock.readLock().lock();
+        try {
+            List<Document> found = new ArrayList<>();
+            for (String id : ids) {
+                Integer slot = slotsById.get(id);
+                if (slot != null) {
+                    ChunkRecord record = records.get(slot);
+                    found.add(new Document(record.id, record.content, new HashMap<>(record.metadata)));
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachChunk(ChunkConsumer consumer) {
+        // Copy references under the lock so the consumer runs without holding it
+        List<ChunkRecord> snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = records.stream().filter(Objects::nonNull).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (ChunkRecord record : snapshot) {
+            consumer.accept(record.id, record.content, new HashMap<>(record.metadata));
+        }
+    }
+
+    @Override
+    public int deleteByDocumentId(Long documentId) {
+        List<String> ids = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            String value = documentId.toString();
+            for (ChunkRecord record : records) {
+                if (record != null && value.equals(String.valueOf(record.metadata.get("document_id")))) {
+                    ids.add(record.id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!ids.isEmpty()) {
+            delete(ids);
+        }
+        return ids.size();
+    }
+
+    @Override
+    public List<Long> findIndexedDocumentIds() {
+        Set<Long> ids = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            for (ChunkRecord record : records) {
+                Object documentId = record != null ? record.metadata.get("document_id") : null;
+                if (documentId != null) {
+                    ids.add(Long.valueOf(documentId.toString()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(ids);
+    }
+
+    // --- persistence ---
+
+    /**
+     * Write the graph to disk if the log has grown since the last checkpoint
+     */
+    @Scheduled(fixedDelayString = "${app.vectorstore.hnsw.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+        lock.readLock().lock();
+        try {
+            // Readers may overlap; only one of them writes the file at a time
+            synchronized (checkpointWrite) {
+                writeCheckpoint();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Caller holds the read or write lock; with the read lock also the checkpointWrite monitor
+     */
+    private void writeCheckpoint() {
+        if (closed || logSequence == checkpointSequence) {
+            return;
+        }
+        try {
+            vectors.force();
+            Path target = file("graph", "bin");
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeLong(logSequence);
+                graph.write(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointSequence = logSequence;
+            log.debug("HNSW graph checkpoint written at log entry {}", logSequence);
+        } catch (IOException e) {
+            log.error("Failed to write HNSW graph checkpoint", e);
+        }
+    }
+
+    /**
+     * @return the log sequence the checkpoint covers, or -1 if there is no usable checkpoint
+     */
+    private long readCheckpoint() {
+        Path path = file("graph", "bin");
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            long sequence = in.readLong();
+            graph.read(in);
+            return sequence;
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable HNSW graph checkpoint: {}", e.getMessage());
+            graph = new HnswGraph(vectors, m, efConstruction);
+            return -1;
+        }
+    }
+
+    /**
+     * Rewrite live chunks into a new generation of files, dropping deleted vectors
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            int next = generation + 1;
+            try (MappedVectorFile target = new MappedVectorFile(file("vectors", "f32", next), dimensions);
+                 Writer writer = Files.newBufferedWriter(file("chunks", "jsonl", next), StandardCharsets.UTF_8)) {
+                for (int slot = 0; slot < records.size(); slot++) {
+                    ChunkRecord record = records.get(slot);
+                    if (record == null) {
+                        continue;
+                    }
+                    int newSlot = target.append(vectors.read(slot));
+                    writer.write(entryWriter.writeValueAsString(
+                        new LogEntry("put", record.id, newSlot, record.content, record.metadata)));
+                    writer.write('\n');
+                }
+            }
+
+            logWriter.close();
+            vectors.close();
+            Files.writeString(directory.resolve("CURRENT.tmp"), Integer.toString(next));
+            Files.move(directory.resolve("CURRENT.tmp"), directory.resolve("CURRENT"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            generation = next;
+            load();
+            writeCheckpoint();
+            deleteOtherGenerations();
+            log.info("HNSW vector store compacted to {} chunks in {} ms", liveCount, System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteOtherGenerations() {
+        try (var files = Files.list(directory)) {
+            String suffix = "-" + generation + ".";
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return (name.startsWith("vectors-") || name.startsWith("chunks-") || name.startsWith("graph-"))
+                    && !name.contains(suffix);
+            }).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Still mapped on Windows; retried on the next start
+                    log.debug("Could not delete old HNSW file {}", path);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not clean up old HNSW files: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        checkpoint();
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            logWriter.close();
+            vectors.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("chunks", liveCount);
+            stats.put("deletedSlots", deleted.cardinality());
+            stats.put("graphNodes", graph.size());
+            stats.put("dimensions", dimensions);
+            stats.put("logEntries", logSequence);
+            stats.put("checkpointedEntries", checkpointSequence);
+            stats.put("generation", generation);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Path file(String name, String extension) {
+        return file(name, extension, generation);
+    }
+
+    private Path file(String name, String extension, int fileGeneration) {
+        return directory.resolve(name + "-" + fileGeneration + "." + extension);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * scale;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package com.korconstructions.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Catalog queries and DDL for the IVFFLAT index that PgVectorStore creates on the vector table.
+ * Rebuilds record the row count they were built on in the index comment.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class IvfflatIndexRepository {
+
+    // pgvector's default when the index is created without a lists option
+    private static final int DEFAULT_LISTS = 100;
+    private static final Pattern LISTS_OPTION = Pattern.compile("lists=(\\d+)");
+    private static final Pattern BUILT_ROWS = Pattern.compile("rows=(\\d+)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String schemaName;
+    private final String tableName;
+
+    public record IndexInfo(String name, int lists, Long builtRows) {
+    }
+
+    @Autowired
+    public IvfflatIndexRepository(JdbcTemplate jdbcTemplate,
+                                  @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                  @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schemaName = schemaName;
+        this.tableName = schemaName + "." + tableName;
+    }
+
+    /**
+     * The valid IVFFLAT index on the vector table, or null when there is none
+     */
+    public IndexInfo findIndex() {
+        List<IndexInfo> indexes = jdbcTemplate.query(
+            "SELECT c.relname, array_to_string(c.reloptions, ','), obj_description(c.oid, 'pg_class')"
+                + " FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid JOIN pg_am a ON a.oid = c.relam"
+                + " WHERE i.indrelid = ?::regclass AND a.amname = 'ivfflat' AND i.indisvalid"
+                + " ORDER BY c.relname",
+            (rs, rowNum) -> new IndexInfo(rs.getString(1), parseLists(rs.getString(2)), parseBuiltRows(rs.getString(3))),
+            tableName);
+        return indexes.isEmpty() ? null : indexes.get(0);
+    }
+
+    public long countRows() {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM " + tableName, Long.class);
+        return count != null ? count : 0;
+    }
+
+    public void analyze() {
+        jdbcTemplate.execute("ANALYZE " + tableName);
+    }
+
+    /**
+     * Build a replacement index next to the current one without blocking writes, then swap
+     * it in under the same name so PgVectorStore's CREATE INDEX IF NOT EXISTS keeps matching.
+     * Must not run inside a transaction.
+     */
+    public void rebuild(String indexName, int lists, long rows) {
+        String replacement = indexName + "_rebuild";
+        // A failed concurrent build leaves an invalid index behind
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + replacement);
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY " + replacement + " ON " + tableName
+            + " USING ivfflat (embedding vector_cosine_ops) WITH (lists = " + lists + ")");
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + indexName);
+        jdbcTemplate.execute("ALTER INDEX " + schemaName + "." + replacement + " RENAME TO " + indexName);
+        jdbcTemplate.execute("COMMENT ON INDEX " + schemaName + "." + indexName + " IS 'rows=" + rows + "'");
+    }
+
+    /**
+     * Number of lists scanned by IVFFLAT queries in the current transaction
+     */
+    public void setLocalProbes(int probes) {
+        jdbcTemplate.execute("SET LOCAL ivfflat.probes = " + probes);
+    }
+
+    private static int parseLists(String options) {
+        if (options != null) {
+            Matcher matcher = LISTS_OPTION.matcher(options);
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return DEFAULT_LISTS;
+    }
+
+    private static Long parseBuiltRows(String comment) {
+        if (comment != null) {
+            Matcher matcher = BUILT_ROWS.matcher(comment);
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1));
+            }
+        }
+        return null;
+    }
+}
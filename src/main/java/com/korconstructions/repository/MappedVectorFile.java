@@ -0,0 +1,170 @@
+package com.korconstructions.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-dimension float vectors stored back to back in a memory-mapped file, so they live
+ * off the Java heap and survive restarts. Slot i starts at HEADER_BYTES + i * dimensions * 4.
+ * Vectors are L2-normalized on write, which makes the dot product the cosine similarity.
+ * Not thread-safe; HnswVectorStore guards it with its lock.
+ */
+class MappedVectorFile implements Closeable {
+
+    private static final int MAGIC = 0x4B564543; // "KVEC"
+    private static final int HEADER_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    // A single mapping is limited to 2 GB, about 340,000 vectors of 1536 dimensions
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private int count;
+    private int capacity;
+    private MappedByteBuffer mapped;
+    private FloatBuffer floats;
+
+    MappedVectorFile(Path path, int dimensions) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.dimensions = dimensions;
+        if (channel.size() >= HEADER_BYTES) {
+            map(channel.size());
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a vector file: " + path);
+            }
+            if (mapped.getInt(4) != dimensions) {
+                throw new IOException("Vector file " + path + " has " + mapped.getInt(4)
+                    + " dimensions, configured " + dimensions);
+            }
+            this.count = mapped.getInt(8);
+            if (count > capacity) {
+                throw new IOException("Vector file " + path + " is truncated");
+            }
+        } else {
+            this.count = 0;
+            map(bytesFor(INITIAL_CAPACITY));
+            writeHeader();
+        }
+    }
+
+    int getDimensions() {
+        return dimensions;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Append a vector and return its slot
+     */
+    int append(float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        if (count == capacity) {
+            long newSize = bytesFor((long) capacity * 2);
+            if (newSize > MAX_MAPPED_BYTES) {
+                newSize = MAX_MAPPED_BYTES;
+                if (bytesFor(count + 1L) > newSize) {
+                    throw new IOException("Vector file is full (" + count + " vectors)");
+                }
+            }
+            map(newSize);
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float scale = norm > 0 ? (float) (1.0 / Math.sqrt(norm)) : 0f;
+        int base = count * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            floats.put(base + i, vector[i] * scale);
+        }
+        int slot = count++;
+        writeHeader();
+        return slot;
+    }
+
+    /**
+     * Cosine similarity of a normalized query and a stored vector
+     */
+    float dot(float[] query, int slot) {
+        FloatBuffer f = floats;
+        int base = slot * dimensions;
+        // Four independent sums let the CPU overlap the multiply-adds
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += query[i] * f.get(base + i);
+            s1 += query[i + 1] * f.get(base + i + 1);
+            s2 += query[i + 2] * f.get(base + i + 2);
+            s3 += query[i + 3] * f.get(base + i + 3);
+        }
+        for (; i < dimensions; i++) {
+            s0 += query[i] * f.get(base + i);
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    float dot(int a, int b) {
+        FloatBuffer f = floats;
+        int baseA = a * dimensions;
+        int baseB = b * dimensions;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimensions; i += 4) {
+            s0 += f.get(baseA + i) * f.get(baseB + i);
+            s1 += f.get(baseA + i + 1) * f.get(baseB + i + 1);
+            s2 += f.get(baseA + i + 2) * f.get(baseB + i + 2);
+            s3 += f.get(baseA + i + 3) * f.get(baseB + i + 3);
+        }
+        for (; i < dimensions; i++) {
+            s0 += f.get(baseA + i) * f.get(baseB + i);
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    float[] read(int slot) {
+        float[] vector = new float[dimensions];
+        floats.get(slot * dimensions, vector);
+        return vector;
+    }
+
+    void force() {
+        mapped.force();
+    }
+
+    private void writeHeader() {
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, dimensions);
+        mapped.putInt(8, count);
+    }
+
+    private long bytesFor(long slots) {
+        return HEADER_BYTES + slots * dimensions * Float.BYTES;
+    }
+
+    private void map(long size) throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = (int) ((size - HEADER_BYTES) / ((long) dimensions * Float.BYTES));
+        floats = mapped.slice(HEADER_BYTES, (int) (size - HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mapped != null) {
+            mapped.force();
+        }
+        channel.close();
+    }
+}
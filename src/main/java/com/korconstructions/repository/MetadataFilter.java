@@ -0,0 +1,116 @@
+package com.korconstructions.repository;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates Spring AI filter expressions against chunk metadata in memory, for vector
+ * stores that cannot push the filter down to a database.
+ */
+final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    static Predicate<Map<String, Object>> compile(Filter.Expression expression) {
+        return switch (expression.type()) {
+            case AND -> compile(operand(expression.left())).and(compile(operand(expression.right())));
+            case OR -> compile(operand(expression.left())).or(compile(operand(expression.right())));
+            case NOT -> compile(operand(expression.left())).negate();
+            case EQ -> comparison(expression, c -> c == 0);
+            case NE -> comparison(expression, c -> c != 0).or(m -> !m.containsKey(key(expression)));
+            case GT -> comparison(expression, c -> c > 0);
+            case GTE -> comparison(expression, c -> c >= 0);
+            case LT -> comparison(expression, c -> c < 0);
+            case LTE -> comparison(expression, c -> c <= 0);
+            case IN -> membership(expression, true);
+            case NIN -> membership(expression, false);
+            default -> throw new IllegalArgumentException("Unsupported filter operation: " + expression.type());
+        };
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        throw new IllegalArgumentException("Expected an expression, got " + operand);
+    }
+
+    private static String key(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key key)) {
+            throw new IllegalArgumentException("Expected a metadata key, got " + expression.left());
+        }
+        String name = key.key();
+        // The text filter syntax allows quoted keys
+        if (name.length() > 1 && (name.startsWith("'") || name.startsWith("\"") || name.startsWith("`"))) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    private static Object value(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Expected a value, got " + expression.right());
+        }
+        return value.value();
+    }
+
+    private interface ComparisonTest {
+        boolean test(int comparison);
+    }
+
+    private static Predicate<Map<String, Object>> comparison(Filter.Expression expression, ComparisonTest test) {
+        String key = key(expression);
+        Object expected = value(expression);
+        return metadata -> {
+            Object actual = metadata.get(key);
+            return actual != null && test.test(compare(actual, expected));
+        };
+    }
+
+    private static Predicate<Map<String, Object>> membership(Filter.Expression expression, boolean in) {
+        String key = key(expression);
+        Object values = value(expression);
+        Collection<?> options = values instanceof Collection<?> collection ? collection : List.of(values);
+        return metadata -> {
+            Object actual = metadata.get(key);
+            boolean found = actual != null && options.stream().anyMatch(option -> compare(actual, option) == 0);
+            return in == found;
+        };
+    }
+
+    /**
+     * Numbers compare numerically, even when one side is stored as a string
+     * (ids are kept as strings in chunk metadata); everything else as text
+     */
+    private static int compare(Object actual, Object expected) {
+        Double a = asNumber(actual);
+        Double b = asNumber(expected);
+        if (a != null && b != null) {
+            return Double.compare(a, b);
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+
+    private static Double asNumber(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String text && !text.isEmpty()
+                && (Character.isDigit(text.charAt(0)) || text.charAt(0) == '-')) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
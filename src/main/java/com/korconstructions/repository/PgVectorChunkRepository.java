@@ -0,0 +1,175 @@
+package com.korconstructions.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Direct access to the pgvector table managed by Spring AI's PgVectorStore,
+ * for operations the VectorStore API does not offer.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class PgVectorChunkRepository implements VectorChunkRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+
+    @Autowired
+    public PgVectorChunkRepository(JdbcTemplate jdbcTemplate,
+                                   ObjectMapper objectMapper,
+                                   @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                   @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = schemaName + "." + tableName;
+    }
+
+    @Override
+    public void insert(List<Document> chunks, List<float[]> embeddings) {
+        String sql = "INSERT INTO " + tableName + " (id, content, metadata, embedding) "
+            + "VALUES (?, ?, ?::json, ?) "
+            + "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, "
+            + "metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Document chunk = chunks.get(i);
+                ps.setObject(1, UUID.fromString(chunk.getId()));
+                ps.setString(2, chunk.getContent());
+                ps.setString(3, toJson(chunk.getMetadata()));
+                ps.setObject(4, new PGvector(embeddings.get(i)));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return chunks.size();
+            }
+        });
+    }
+
+    @Override
+    public void ensureMetadataIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName("document_id_idx")
+            + " ON " + tableName + " ((metadata->>'document_id'))");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName("building_id_idx")
+            + " ON " + tableName + " ((metadata->>'building_id'))");
+        // PgVectorStore turns filter expressions into jsonpath matches (metadata::jsonb @@ ...),
+        // which a jsonb_path_ops GIN index can answer
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName("metadata_gin_idx")
+            + " ON " + tableName + " USING GIN ((metadata::jsonb) jsonb_path_ops)");
+    }
+
+    @Override
+    public int updateDocumentMetadata(Long documentId, Map<String, Object> metadata, List<String> removedKeys) {
+        String sql = "UPDATE " + tableName
+            + " SET metadata = ((metadata::jsonb - ?::text[]) || ?::jsonb)::json"
+            + " WHERE metadata->>'document_id' = ?";
+        return jdbcTemplate.update(sql, "{" + String.join(",", removedKeys) + "}", toJson(metadata),
+            documentId.toString());
+    }
+
+    @Override
+    public List<Document> copyDocumentChunks(Long sourceDocumentId, Map<String, Object> metadata,
+                                             List<String> removedKeys) {
+        // Copied inside the database, so the embeddings never travel to the application
+        String sql = "INSERT INTO " + tableName + " (id, content, metadata, embedding)"
+            + " SELECT gen_random_uuid(), content, ((metadata::jsonb - ?::text[]) || ?::jsonb)::json, embedding"
+            + " FROM " + tableName + " WHERE metadata->>'document_id' = ?"
+            + " RETURNING id, content, metadata::text";
+        return jdbcTemplate.query(sql,
+            (rs, rowNum) -> new Document(rs.getString(1), rs.getString(2), fromJson(rs.getString(3))),
+            "{" + String.join(",", removedKeys) + "}", toJson(metadata), sourceDocumentId.toString());
+    }
+
+    @Override
+    public int updateBuildingName(Long buildingId, String buildingName) {
+        String sql = "UPDATE " + tableName
+            + " SET metadata = jsonb_set(metadata::jsonb, '{building_name}', to_jsonb(?::text))::json"
+            + " WHERE metadata->>'building_id' = ?";
+        return jdbcTemplate.update(sql, buildingName, buildingId.toString());
+    }
+
+    @Override
+    public List<Document> findByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] args = ids.stream().map(UUID::fromString).toArray();
+        return jdbcTemplate.query("SELECT id, content, metadata::text FROM " + tableName
+                + " WHERE id IN (" + placeholders + ")",
+            (rs, rowNum) -> new Document(rs.getString(1), rs.getString(2), fromJson(rs.getString(3))),
+            args);
+    }
+
+    @Override
+    public void forEachChunk(ChunkConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            // The PostgreSQL driver only streams with a fetch size outside autocommit
+            connection.setAutoCommit(false);
+            PreparedStatement ps = connection.prepareStatement(
+                "SELECT id, content, metadata::text FROM " + tableName);
+            ps.setFetchSize(500);
+            return ps;
+        }, rs -> {
+            consumer.accept(rs.getString(1), rs.getString(2), fromJson(rs.getString(3)));
+        });
+    }
+
+    @Override
+    public int deleteByDocumentId(Long documentId) {
+        return jdbcTemplate.update("DELETE FROM " + tableName + " WHERE metadata->>'document_id' = ?",
+            documentId.toString());
+    }
+
+    @Override
+    public List<Long> findIndexedDocumentIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT metadata->>'document_id' FROM " + tableName
+                + " WHERE metadata->>'document_id' IS NOT NULL", String.class)
+            .stream()
+            .map(Long::valueOf)
+            .toList();
+    }
+
+    private String indexName(String suffix) {
+        return tableName.substring(tableName.indexOf('.') + 1) + "_" + suffix;
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return json != null ? objectMapper.readValue(json, new TypeReference<Map<String, Object>>() { }) : new HashMap<>();
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to parse chunk metadata", e);
+        }
+    }
+
+    private String toJson(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize chunk metadata", e);
+        }
+    }
+}
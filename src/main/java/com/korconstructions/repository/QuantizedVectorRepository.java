@@ -0,0 +1,232 @@
+package com.korconstructions.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Two-stage similarity search over the pgvector table: a first pass over a compact
+ * quantized copy of the embeddings (sign bits or half precision) picks a shortlist,
+ * which is then re-ranked with the full float32 vectors still stored in the table.
+ * The quantized copies exist only inside their HNSW expression indexes.
+ */
+@Repository
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class QuantizedVectorRepository {
+
+    public enum Mode {
+        /** No quantized index, the default IVFFLAT index over float32 vectors */
+        NONE,
+        /** One sign bit per dimension compared by Hamming distance, 32x smaller than float32 */
+        BINARY,
+        /** 16-bit floats compared by cosine distance, 2x smaller than float32 */
+        HALFVEC
+    }
+
+    // hnsw.ef_search is capped at 1000 by pgvector
+    private static final int MAX_EF_SEARCH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+    private final int dimensions;
+
+    @Autowired
+    public QuantizedVectorRepository(JdbcTemplate jdbcTemplate,
+                                     ObjectMapper objectMapper,
+                                     @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                     @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                     @Value("${spring.ai.vectorstore.pgvector.dimensions:1536}") int dimensions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = schemaName + "." + tableName;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Create the HNSW index over the quantized expression. Needs pgvector 0.7 or later.
+     */
+    public void ensureIndex(Mode mode) {
+        switch (mode) {
+            case BINARY -> jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName(mode)
+                + " ON " + tableName + " USING hnsw ((" + firstPassColumn(mode) + ") bit_hamming_ops)");
+            case HALFVEC -> jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName(mode)
+                + " ON " + tableName + " USING hnsw ((" + firstPassColumn(mode) + ") halfvec_cosine_ops)");
+            case NONE -> { }
+        }
+    }
+
+    public boolean hasIndex(Mode mode) {
+        if (mode == Mode.NONE) {
+            return true;
+        }
+        String schema = tableName.substring(0, tableName.indexOf('.'));
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL",
+            Boolean.class, schema + "." + indexName(mode)));
+    }
+
+    /**
+     * On-disk size of the table and of each of its indexes, in bytes
+     */
+    public Map<String, Long> getSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        sizes.put("table", jdbcTemplate.queryForObject(
+            "SELECT pg_table_size(?::regclass)", Long.class, tableName));
+        jdbcTemplate.query("SELECT indexrelid::regclass::text, pg_relation_size(indexrelid) FROM pg_index"
+                + " WHERE indrelid = ?::regclass",
+            rs -> {
+                sizes.put(rs.getString(1), rs.getLong(2));
+            }, tableName);
+        return sizes;
+    }
+
+    /**
+     * Nearest chunks by cosine similarity. The quantized index returns {@code shortlist}
+     * candidates, of which the {@code topK} closest by exact distance are kept.
+     * Each result carries its exact cosine distance in the "distance" metadata key.
+     */
+    @Transactional(readOnly = true)
+    public List<Document> search(Mode mode, float[] query, int topK, int shortlist,
+                                 String buildingId, String type) {
+        if (mode == Mode.NONE) {
+            return annSearch(query, topK, buildingId, type);
+        }
+        // The HNSW scan stops after ef_search candidates, and metadata filters are applied
+        // after it, so the scan has to be at least as wide as the shortlist
+        int efSearch = Math.min(MAX_EF_SEARCH, (buildingId != null || type != null) ? shortlist * 4 : shortlist);
+        jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.max(efSearch, topK));
+
+        List<Object> args = new ArrayList<>();
+        PGvector vector = new PGvector(query);
+        args.add(vector);
+        String filter = filterClause(buildingId, type, args);
+        args.add(vector);
+        args.add(shortlist);
+        args.add(topK);
+
+        String sql = "SELECT id, content, metadata::text, embedding <=> ? AS distance FROM ("
+            + "SELECT id, content, metadata, embedding FROM " + tableName + filter
+            + " ORDER BY " + firstPassColumn(mode) + " " + firstPassOperator(mode) + " " + firstPassParameter(mode)
+            + " LIMIT ?) shortlist ORDER BY distance LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> toDocument(rs), args.toArray());
+    }
+
+    /**
+     * Single-stage search through the default IVFFLAT index over float32 vectors
+     */
+    @Transactional(readOnly = true)
+    public List<Document> annSearch(float[] query, int topK, String buildingId, String type) {
+        List<Object> args = new ArrayList<>();
+        PGvector vector = new PGvector(query);
+        args.add(vector);
+        String filter = filterClause(buildingId, type, args);
+        args.add(topK);
+        return jdbcTemplate.query("SELECT id, content, metadata::text, embedding <=> ? AS distance FROM "
+                + tableName + filter + " ORDER BY distance LIMIT ?",
+            (rs, rowNum) -> toDocument(rs), args.toArray());
+    }
+
+    /**
+     * Brute-force search with index scans disabled, the ground truth for benchmarks
+     */
+    @Transactional(readOnly = true)
+    public List<Document> exactSearch(float[] query, int topK) {
+        jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+        return annSearch(query, topK, null, null);
+    }
+
+    /**
+     * Random stored chunks with their embeddings, used as benchmark queries
+     */
+    public Map<String, float[]> sampleEmbeddings(int count) {
+        Map<String, float[]> sample = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id, embedding::text FROM " + tableName + " ORDER BY random() LIMIT ?",
+            rs -> {
+                sample.put(rs.getString(1), parseVector(rs.getString(2)));
+            }, count);
+        return sample;
+    }
+
+    /**
+     * Parse pgvector's text form, e.g. [0.1,-0.2,0.3]
+     */
+    private static float[] parseVector(String text) {
+        String[] parts = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+    private String filterClause(String buildingId, String type, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        if (buildingId != null) {
+            conditions.add("metadata->>'building_id' = ?");
+            args.add(buildingId);
+        }
+        if (type != null) {
+            conditions.add("metadata->>'type' = ?");
+            args.add(type);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * The indexed expression; queries must repeat it verbatim for the planner to use the index
+     */
+    private String firstPassColumn(Mode mode) {
+        return switch (mode) {
+            case BINARY -> "binary_quantize(embedding)::bit(" + dimensions + ")";
+            case HALFVEC -> "embedding::halfvec(" + dimensions + ")";
+            case NONE -> "embedding";
+        };
+    }
+
+    private String firstPassOperator(Mode mode) {
+        return mode == Mode.BINARY ? "<~>" : "<=>";
+    }
+
+    private String firstPassParameter(Mode mode) {
+        return switch (mode) {
+            case BINARY -> "binary_quantize(?::vector)::bit(" + dimensions + ")";
+            case HALFVEC -> "?::vector::halfvec(" + dimensions + ")";
+            case NONE -> "?::vector";
+        };
+    }
+
+    private String indexName(Mode mode) {
+        return tableName.substring(tableName.indexOf('.') + 1) + "_" + mode.name().toLowerCase(Locale.ROOT) + "_hnsw_idx";
+    }
+
+    private Document toDocument(ResultSet rs) throws SQLException {
+        Map<String, Object> metadata = fromJson(rs.getString(3));
+        metadata.put("distance", rs.getFloat(4));
+        return new Document(rs.getString(1), rs.getString(2), metadata);
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return json != null ? objectMapper.readValue(json, new TypeReference<Map<String, Object>>() { }) : new HashMap<>();
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to parse chunk metadata", e);
+        }
+    }
+}
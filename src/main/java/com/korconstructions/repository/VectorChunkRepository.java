@@ -0,0 +1,67 @@
+package com.korconstructions.repository;
+
+import org.springframework.ai.document.Document;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chunk-level access to the vector store, for operations the VectorStore API does not offer.
+ * Implemented by the pgvector table (default) and the in-process HNSW store.
+ */
+public interface VectorChunkRepository {
+
+    /**
+     * Write chunks whose embeddings are already known, without calling the embedding model
+     */
+    void insert(List<Document> chunks, List<float[]> embeddings);
+
+    /**
+     * Create whatever indexes deletes and metadata updates by document or building need,
+     * so they do not scan every chunk
+     */
+    void ensureMetadataIndexes();
+
+    /**
+     * Rewrite metadata keys of every chunk of a document, leaving content and embeddings untouched
+     * @param metadata keys to set
+     * @param removedKeys keys to drop, e.g. the building keys when a document is unassigned
+     */
+    int updateDocumentMetadata(Long documentId, Map<String, Object> metadata, List<String> removedKeys);
+
+    /**
+     * Copy every chunk of one document to another under new ids, reusing the embeddings
+     * @param metadata keys to set on the copies, e.g. the target's document id and building
+     * @param removedKeys keys to drop from the copies
+     * @return the copies
+     */
+    List<Document> copyDocumentChunks(Long sourceDocumentId, Map<String, Object> metadata, List<String> removedKeys);
+
+    /**
+     * Propagate a building rename to all of its chunks
+     */
+    int updateBuildingName(Long buildingId, String buildingName);
+
+    /**
+     * Chunks with the given ids, in no particular order
+     */
+    List<Document> findByIds(Collection<String> ids);
+
+    /**
+     * Stream every chunk without loading the store into memory
+     */
+    void forEachChunk(ChunkConsumer consumer);
+
+    int deleteByDocumentId(Long documentId);
+
+    /**
+     * Distinct document ids that have chunks in the store
+     */
+    List<Long> findIndexedDocumentIds();
+
+    @FunctionalInterface
+    interface ChunkConsumer {
+        void accept(String id, String content, Map<String, Object> metadata);
+    }
+}
@@ -0,0 +1,314 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.DocumentType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Semantic cache of generated answers. A question is a hit when its embedding is close
+ * enough to a cached question asked with the same building and document type filter, and
+ * both mention the same numbers: "όροφος 2" and "όροφος 3" embed almost identically.
+ * Entries remember which documents contributed chunks and are dropped when one of them
+ * changes; indexing a new document drops the entries whose scope it falls into.
+ */
+@Slf4j
+@Service
+public class AnswerCacheService {
+
+    private final EmbeddingModel embeddingModel;
+
+    @Value("${app.rag.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rag.answer-cache.similarity-threshold:0.98}")
+    private double similarityThreshold;
+
+    @Value("${app.rag.answer-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${app.rag.answer-cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:[.,]\\d+)*");
+    private long nextId;
+    // Bumped by every invalidation; answers computed across one are not stored
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedMillis = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    @Autowired
+    public AnswerCacheService(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    /**
+     * Result of a lookup. On a miss it carries what store() needs to cache the answer.
+     */
+    public static class Lookup {
+        private final float[] embedding;
+        private final List<String> numbers;
+        private final Long buildingId;
+        private final DocumentType type;
+        private final long generation;
+        private final long startedAt = System.currentTimeMillis();
+        private final CachedAnswer hit;
+
+        private Lookup(float[] embedding, List<String> numbers, Long buildingId, DocumentType type, long generation,
+                       CachedAnswer hit) {
+            this.embedding = embedding;
+            this.numbers = numbers;
+            this.buildingId = buildingId;
+            this.type = type;
+            this.generation = generation;
+            this.hit = hit;
+        }
+
+        public boolean isHit() {
+            return hit != null;
+        }
+
+        public CachedAnswer getHit() {
+            return hit;
+        }
+    }
+
+    /**
+     * A cached answer with the metadata of the chunks it was generated from
+     */
+    public record CachedAnswer(String answer, List<Map<String, Object>> sources) {
+    }
+
+    private static class Entry {
+        final float[] embedding;
+        final List<String> numbers;
+        final Long buildingId;
+        final DocumentType type;
+        final CachedAnswer answer;
+        final Set<String> documentIds;
+        final long createdAt;
+        final long latencyMillis;
+
+        Entry(float[] embedding, List<String> numbers, Long buildingId, DocumentType type, CachedAnswer answer,
+              Set<String> documentIds, long latencyMillis) {
+            this.embedding = embedding;
+            this.numbers = numbers;
+            this.buildingId = buildingId;
+            this.type = type;
+            this.answer = answer;
+            this.documentIds = documentIds;
+            this.createdAt = System.currentTimeMillis();
+            this.latencyMillis = latencyMillis;
+        }
+    }
+
+    public Lookup lookup(String question, Long buildingId, DocumentType type) {
+        if (!enabled) {
+            return new Lookup(null, null, buildingId, type, 0, null);
+        }
+
+        float[] embedding = normalize(embeddingModel.embed(question.trim()));
+        List<String> numbers = numbers(question);
+        long expiry = System.currentTimeMillis() - ttlMinutes * 60_000L;
+
+        synchronized (this) {
+            Entry best = null;
+            Long bestId = null;
+            double bestScore = similarityThreshold;
+            Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Entry> e = it.next();
+                Entry entry = e.getValue();
+                if (entry.createdAt < expiry) {
+                    it.remove();
+                    continue;
+                }
+                if (!Objects.equals(entry.buildingId, buildingId) || entry.type != type
+                        || !entry.numbers.equals(numbers)) {
+                    continue;
+                }
+                double score = dot(embedding, entry.embedding);
+                if (score >= bestScore) {
+                    best = entry;
+                    bestId = e.getKey();
+                    bestScore = score;
+                }
+            }
+
+            if (best != null) {
+                entries.get(bestId); // touch for LRU order
+                hits.incrementAndGet();
+                savedMillis.addAndGet(best.latencyMillis);
+                log.info("Answer cache hit (similarity {})", String.format("%.3f", bestScore));
+                return new Lookup(embedding, numbers, buildingId, type, generation, best.answer);
+            }
+            misses.incrementAndGet();
+            return new Lookup(embedding, numbers, buildingId, type, generation, null);
+        }
+    }
+
+    /**
+     * Cache an answer generated after a missed lookup
+     * @param sources metadata of the chunks the answer was generated from
+     */
+    public void store(Lookup lookup, String answer, List<Map<String, Object>> sources) {
+        if (!enabled || lookup.embedding == null || lookup.isHit() || sources.isEmpty()) {
+            return;
+        }
+
+        Set<String> documentIds = new java.util.HashSet<>();
+        for (Map<String, Object> source : sources) {
+            Object documentId = source.get("documentId");
+            if (documentId != null) {
+                documentIds.add(documentId.toString());
+            }
+        }
+        long latency = System.currentTimeMillis() - lookup.startedAt;
+
+        synchronized (this) {
+            if (lookup.generation != generation) {
+                // Documents changed while the answer was generated
+                return;
+            }
+            entries.put(nextId++, new Entry(lookup.embedding, lookup.numbers, lookup.buildingId, lookup.type,
+                new CachedAnswer(answer, List.copyOf(sources)), documentIds, latency));
+            Iterator<Long> it = entries.keySet().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop answers that used chunks of the document
+     */
+    public synchronized void invalidateDocument(Long documentId) {
+        String id = documentId.toString();
+        generation++;
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.documentIds.contains(id));
+        recordInvalidation(before, "document " + documentId);
+    }
+
+    /**
+     * Drop answers a new document of the building could change: those scoped to the
+     * building and those asked across all buildings
+     */
+    public synchronized void invalidateScope(Long buildingId) {
+        generation++;
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.buildingId == null || entry.buildingId.equals(buildingId));
+        recordInvalidation(before, buildingId != null ? "building " + buildingId : "unassigned documents");
+    }
+
+    public synchronized void clear() {
+        generation++;
+        int before = entries.size();
+        entries.clear();
+        recordInvalidation(before, "all");
+    }
+
+    private void recordInvalidation(int before, String reason) {
+        int removed = before - entries.size();
+        if (removed > 0) {
+            invalidated.addAndGet(removed);
+            log.info("Invalidated {} cached answers ({})", removed, reason);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("similarityThreshold", similarityThreshold);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0.0);
+        stats.put("savedLatencyMs", savedMillis.get());
+        stats.put("invalidatedEntries", invalidated.get());
+        return stats;
+    }
+
+    /**
+     * Metadata of the chunks an answer is based on, as sent to clients
+     */
+    public static List<Map<String, Object>> describeSources(List<org.springframework.ai.document.Document> chunks) {
+        List<Map<String, Object>> sources = new ArrayList<>();
+        for (org.springframework.ai.document.Document doc : chunks) {
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("documentId", doc.getMetadata().get("document_id"));
+            source.put("title", doc.getMetadata().get("title"));
+            source.put("type", doc.getMetadata().get("type"));
+            source.put("buildingName", doc.getMetadata().get("building_name"));
+            source.put("score", doc.getMetadata().get("rrf_score"));
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    /**
+     * Numbers in a question in order of appearance, with decimal commas written as points
+     */
+    static List<String> numbers(String question) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(question);
+        while (matcher.find()) {
+            numbers.add(matcher.group().replace(',', '.'));
+        }
+        return numbers;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
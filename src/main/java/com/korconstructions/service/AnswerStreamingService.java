@@ -0,0 +1,140 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.DocumentType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers document questions over Server-Sent Events: the retrieved sources are sent
+ * first, then the answer tokens as the model produces them.
+ * Events: "sources", "token" ({"text": ...}), "done", "error".
+ */
+@Slf4j
+@Service
+public class AnswerStreamingService {
+
+    private static final long SSE_TIMEOUT_MS = 5 * 60 * 1000L;
+
+    private final DocumentRAGService ragService;
+    private final AnswerCacheService answerCache;
+    private final ThreadPoolTaskExecutor answerExecutor;
+
+    @Autowired
+    public AnswerStreamingService(DocumentRAGService ragService,
+                                  AnswerCacheService answerCache,
+                                  @Qualifier("answerStreamExecutor") ThreadPoolTaskExecutor answerExecutor) {
+        this.ragService = ragService;
+        this.answerCache = answerCache;
+        this.answerExecutor = answerExecutor;
+    }
+
+    public SseEmitter streamQuestion(String question, Long buildingId, DocumentType type) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+        AtomicReference<Disposable> subscription = new AtomicReference<>();
+        Runnable cancel = () -> {
+            Disposable disposable = subscription.get();
+            if (disposable != null) {
+                disposable.dispose();
+            }
+        };
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+
+        try {
+            answerExecutor.execute(() -> answer(emitter, subscription, cancel, question, buildingId, type));
+        } catch (TaskRejectedException e) {
+            // The emitter is already handed out, so it has to be completed here
+            log.warn("Answer queue full, rejecting question");
+            sendError(emitter, "Ο διακομιστής είναι απασχολημένος, δοκιμάστε ξανά σε λίγο");
+        }
+
+        return emitter;
+    }
+
+    private void answer(SseEmitter emitter, AtomicReference<Disposable> subscription, Runnable cancel,
+                        String question, Long buildingId, DocumentType type) {
+        long start = System.currentTimeMillis();
+        try {
+            AnswerCacheService.Lookup cached = answerCache.lookup(question, buildingId, type);
+            if (cached.isHit()) {
+                emitter.send(SseEmitter.event().name("sources")
+                    .data(cached.getHit().sources(), MediaType.APPLICATION_JSON));
+                sendToken(emitter, cached.getHit().answer());
+                emitter.send(SseEmitter.event().name("done").data("{}", MediaType.APPLICATION_JSON));
+                emitter.complete();
+                return;
+            }
+
+            DocumentRAGService.PreparedQuestion prepared = ragService.prepareQuestion(question, buildingId, type);
+            List<Map<String, Object>> sources = AnswerCacheService.describeSources(prepared.sources());
+            emitter.send(SseEmitter.event().name("sources").data(sources, MediaType.APPLICATION_JSON));
+
+            if (prepared.prompt() == null) {
+                sendToken(emitter, prepared.noResultsAnswer());
+                emitter.send(SseEmitter.event().name("done").data("{}", MediaType.APPLICATION_JSON));
+                emitter.complete();
+                return;
+            }
+
+            long[] firstToken = {0};
+            StringBuilder answer = new StringBuilder();
+            subscription.set(ragService.streamAnswer(prepared.prompt()).subscribe(
+                token -> {
+                    if (firstToken[0] == 0) {
+                        firstToken[0] = System.currentTimeMillis();
+                        log.info("First answer token after {} ms", firstToken[0] - start);
+                    }
+                    answer.append(token);
+                    try {
+                        sendToken(emitter, token);
+                    } catch (IOException e) {
+                        // Client went away
+                        cancel.run();
+                    }
+                },
+                error -> {
+                    log.error("Streaming answer failed", error);
+                    sendError(emitter, error.getMessage());
+                },
+                () -> {
+                    log.info("Answer streamed in {} ms", System.currentTimeMillis() - start);
+                    answerCache.store(cached, answer.toString(), sources);
+                    try {
+                        emitter.send(SseEmitter.event().name("done").data("{}", MediaType.APPLICATION_JSON));
+                    } catch (IOException ignored) {
+                        // Client went away
+                    }
+                    emitter.complete();
+                }));
+        } catch (Exception e) {
+            log.error("Failed to answer question", e);
+            sendError(emitter, e.getMessage());
+        }
+    }
+
+    private void sendToken(SseEmitter emitter, String token) throws IOException {
+        emitter.send(SseEmitter.event().name("token").data(Map.of("text", token), MediaType.APPLICATION_JSON));
+    }
+
+    private void sendError(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error")
+                .data(Map.of("message", message != null ? message : "error"), MediaType.APPLICATION_JSON));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+}
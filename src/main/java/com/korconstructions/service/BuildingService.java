@@ -3,22 +3,29 @@ package com.korconstructions.service;
 import com.korconstructions.model.Building;
 import com.korconstructions.model.BuildingStatus;
 import com.korconstructions.repository.BuildingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class BuildingService {
 
+    private static final Logger logger = LoggerFactory.getLogger(BuildingService.class);
+
     private final BuildingRepository buildingRepository;
+    private final DocumentRAGService ragService;
 
     @Autowired
-    public BuildingService(BuildingRepository buildingRepository) {
+    public BuildingService(BuildingRepository buildingRepository, DocumentRAGService ragService) {
         this.buildingRepository = buildingRepository;
+        this.ragService = ragService;
     }
 
     public List<Building> getAllBuildings() {
@@ -50,6 +57,8 @@ public class BuildingService {
         Building existingBuilding = buildingRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Building not found with id: " + id));
 
+        boolean renamed = !Objects.equals(existingBuilding.getName(), building.getName());
+
         // Update only the editable fields, preserve floors relationship
         existingBuilding.setName(building.getName());
         existingBuilding.setAddress(building.getAddress());
@@ -59,7 +68,18 @@ public class BuildingService {
         existingBuilding.setCustomer(building.getCustomer());
         existingBuilding.setUpdatedAt(LocalDateTime.now());
 
-        return buildingRepository.save(existingBuilding);
+        Building saved = buildingRepository.save(existingBuilding);
+
+        // Document chunks carry the building name in their metadata
+        if (renamed) {
+            try {
+                ragService.updateBuildingName(id, saved.getName());
+            } catch (Exception e) {
+                logger.error("Failed to propagate rename of building {} to document chunks", id, e);
+            }
+        }
+
+        return saved;
     }
 
     @Transactional
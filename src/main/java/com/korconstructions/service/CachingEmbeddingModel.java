@@ -0,0 +1,70 @@
+package com.korconstructions.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+/**
+ * Embedding model that answers single-text embeds (the query path of the vector store
+ * and the answer cache) from a QueryEmbeddingCache. Batch calls used for indexing go
+ * straight to the delegate; chunk embeddings have their own persistent cache.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final QueryEmbeddingCache cache;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, QueryEmbeddingCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (!cache.isEnabled()) {
+            return delegate.embed(text);
+        }
+        float[] cached = cache.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        float[] embedding = delegate.embed(text);
+        cache.put(text, embedding);
+        return embedding;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return delegate.embed(texts);
+    }
+
+    @Override
+    public List<float[]> embed(List<Document> documents, EmbeddingOptions options, BatchingStrategy batchingStrategy) {
+        return delegate.embed(documents, options, batchingStrategy);
+    }
+
+    @Override
+    public EmbeddingResponse embedForResponse(List<String> texts) {
+        return delegate.embedForResponse(texts);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,56 @@
+package com.korconstructions.service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Set;
+
+/**
+ * SAX handler that feeds Tika's XHTML output straight into a StreamingChunker,
+ * turning block elements into the line breaks the chunker splits on.
+ * Tika wraps each PDF page in a div with class "page", which is reported as a page start.
+ */
+public class ChunkingContentHandler extends DefaultHandler {
+
+    private static final Set<String> PARAGRAPH_ELEMENTS = Set.of(
+        "p", "div", "h1", "h2", "h3", "h4", "h5", "h6", "table", "ul", "ol", "blockquote", "pre");
+    private static final Set<String> LINE_ELEMENTS = Set.of("li", "tr", "dd", "dt");
+    private static final Set<String> CELL_ELEMENTS = Set.of("td", "th");
+
+    private final StreamingChunker chunker;
+    private int page;
+
+    public ChunkingContentHandler(StreamingChunker chunker) {
+        this.chunker = chunker;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        chunker.append(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        chunker.append(ch, start, length);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        if ("br".equals(localName)) {
+            chunker.append("\n");
+        } else if ("div".equals(localName) && "page".equals(attributes.getValue("class"))) {
+            chunker.startPage(++page);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        if (PARAGRAPH_ELEMENTS.contains(localName)) {
+            chunker.append("\n\n");
+        } else if (LINE_ELEMENTS.contains(localName)) {
+            chunker.append("\n");
+        } else if (CELL_ELEMENTS.contains(localName)) {
+            chunker.append(" ");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.korconstructions.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Stores uploads under the SHA-256 of their contents, as {@code <dir>/ab/<hash>} where ab are
+ * the first two hex digits, so identical uploads share one file whatever they were named.
+ * The original file name and type are kept by the owner's row, not in the stored path.
+ * The hash is computed while the upload is copied to a temp file in the same directory
+ * in a single pass, and the file is then moved into place (or dropped when the content is
+ * already stored).
+ * Files are not counted here: the owners pass {@link #release} a query that counts the rows
+ * pointing at a path. The file is deleted after the owner's transaction commits, and only if the
+ * count, taken then under the hash's lock, is zero. A stored file is pinned until the row that
+ * refers to it is saved ({@link #settle}), so a delete running in between keeps the file.
+ */
+@Slf4j
+@Service
+public class ContentAddressedStorage {
+
+    // Storing and releasing the same hash must not interleave
+    private final Object[] locks = new Object[64];
+    // Stored files whose referring rows are not saved yet, with the number of pending uploads
+    private final Map<Path, Integer> pins = new ConcurrentHashMap<>();
+    private final TransactionTemplate countTransaction;
+
+    public ContentAddressedStorage(PlatformTransactionManager transactionManager) {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        // The references are counted after the deleting transaction has committed
+        countTransaction = new TransactionTemplate(transactionManager);
+        countTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        countTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Pinned until passed to {@link #settle}
+     * @param duplicate true when a file with the same contents was already stored
+     */
+    public record StoredFile(Path path, String hash, long size, boolean duplicate) {
+    }
+
+    public StoredFile store(InputStream in, Path directory) throws IOException {
+        return store(Channels.newChannel(in), directory, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Store content read once from the channel: each buffer is hashed, copied into the head
+     * buffer while it has room, and written to disk, so the content is never held in memory
+     * @param maxBytes larger content is rejected as soon as the limit is passed
+     * @param head receives the leading bytes, e.g. for type detection; may be null
+     * @throws MaxUploadSizeExceededException when the content exceeds maxBytes
+     */
+    public StoredFile store(ReadableByteChannel in, Path directory, long maxBytes, ByteBuffer head)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(".upload-" + UUID.randomUUID() + ".tmp");
+        MessageDigest digest = newDigest();
+        long size = 0;
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    if (size > maxBytes) {
+                        throw new MaxUploadSizeExceededException(maxBytes);
+                    }
+                    if (head != null && head.hasRemaining()) {
+                        ByteBuffer leading = buffer.duplicate();
+                        leading.limit(leading.position() + Math.min(leading.remaining(), head.remaining()));
+                        head.put(leading);
+                    }
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathFor(directory, hash);
+
+            synchronized (lockFor(hash)) {
+                pins.merge(key(target), 1, Integer::sum);
+                if (Files.exists(target)) {
+                    log.info("Upload matches stored file {}, keeping one copy", target.getFileName());
+                    return new StoredFile(target, hash, size, true);
+                }
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new StoredFile(target, hash, size, false);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Unpin a stored file once the row referring to it is saved, i.e. when the current transaction
+     * completes, or at once outside a transaction. Call it also when no row is saved.
+     */
+    public void settle(StoredFile stored) {
+        Path path = key(stored.path());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    unpin(path);
+                }
+            });
+        } else {
+            unpin(path);
+        }
+    }
+
+    /**
+     * Delete a stored file once nothing refers to it any more. Inside a transaction this happens
+     * after it commits, so a rollback keeps the file.
+     * @param remainingReferences counts the rows still pointing at the path
+     */
+    public void release(Path path, LongSupplier remainingReferences) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteIfUnreferenced(path, remainingReferences);
+                }
+            });
+        } else {
+            deleteIfUnreferenced(path, remainingReferences);
+        }
+    }
+
+    private void deleteIfUnreferenced(Path path, LongSupplier remainingReferences) {
+        String name = path.getFileName().toString();
+        // Counted under the lock so that an upload of the same contents cannot pin the file in between
+        synchronized (lockFor(name)) {
+            if (pins.containsKey(key(path))) {
+                log.info("Keeping {}: an upload with the same contents is being saved", path.getFileName());
+                return;
+            }
+            long references = countTransaction.execute(status -> remainingReferences.getAsLong());
+            if (references > 0) {
+                log.info("Keeping {}: still referenced {} time(s)", path.getFileName(), references);
+                return;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.error("Failed to delete file: {}", path, e);
+            }
+        }
+    }
+
+    private void unpin(Path path) {
+        synchronized (lockFor(path.getFileName().toString())) {
+            pins.computeIfPresent(path, (pinned, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private static Path pathFor(Path directory, String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private Object lockFor(String hashOrName) {
+        // A stored file's name starts with its hash, so both map to the same lock
+        return locks[Math.floorMod(hashOrName.substring(0, Math.min(8, hashOrName.length())).hashCode(), locks.length)];
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.korconstructions.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns retrieved chunks into prompt context: chunks of the same document that are
+ * neighbours are merged with their shared overlap removed, near-duplicate passages are
+ * dropped, and passages are added by score until the token budget is spent.
+ */
+@Slf4j
+@Component
+public class ContextPacker {
+
+    // Chunks overlap by up to 150 characters, cut at a word boundary
+    private static final int MAX_OVERLAP = 400;
+    private static final int MIN_OVERLAP = 20;
+
+    @Value("${app.rag.context.max-tokens:3000}")
+    private int maxTokens;
+
+    // Greek text costs far more tokens per character than English
+    @Value("${app.rag.context.chars-per-token:2.5}")
+    private double charsPerToken;
+
+    @Value("${app.rag.context.duplicate-similarity:0.85}")
+    private double duplicateSimilarity;
+
+    /**
+     * A continuous passage of one document
+     */
+    public record Passage(String documentId, String title, String text, double score) {
+    }
+
+    public List<Passage> pack(List<org.springframework.ai.document.Document> chunks) {
+        List<Passage> merged = new ArrayList<>();
+        for (List<org.springframework.ai.document.Document> group : groupByDocument(chunks).values()) {
+            merged.addAll(mergeNeighbours(group));
+        }
+        merged.sort(Comparator.comparingDouble(Passage::score).reversed());
+
+        List<Passage> packed = new ArrayList<>();
+        List<Set<String>> packedTerms = new ArrayList<>();
+        int budget = Math.max(1, maxTokens);
+        int used = 0;
+        int duplicates = 0;
+        for (Passage passage : merged) {
+            Set<String> terms = new HashSet<>(GreekTextNormalizer.tokenize(passage.text()));
+            if (isNearDuplicate(terms, packedTerms)) {
+                duplicates++;
+                continue;
+            }
+
+            int tokens = estimateTokens(passage.text());
+            if (used + tokens > budget) {
+                if (!packed.isEmpty()) {
+                    continue;
+                }
+                // The best passage alone is over budget, keep as much of it as fits
+                int chars = (int) (budget * charsPerToken);
+                passage = new Passage(passage.documentId(), passage.title(),
+                    passage.text().substring(0, Math.min(chars, passage.text().length())), passage.score());
+                tokens = estimateTokens(passage.text());
+            }
+            packed.add(passage);
+            packedTerms.add(terms);
+            used += tokens;
+        }
+
+        int chunkChars = chunks.stream().mapToInt(c -> c.getContent().length()).sum();
+        int packedChars = packed.stream().mapToInt(p -> p.text().length()).sum();
+        log.info("Packed {} chunks ({} chars) into {} passages ({} chars, ~{} tokens), {} near-duplicates dropped",
+            chunks.size(), chunkChars, packed.size(), packedChars, used, duplicates);
+        return packed;
+    }
+
+    public int estimateTokens(String text) {
+        return (int) Math.ceil(text.length() / charsPerToken);
+    }
+
+    private Map<String, List<org.springframework.ai.document.Document>> groupByDocument(
+            List<org.springframework.ai.document.Document> chunks) {
+        Map<String, List<org.springframework.ai.document.Document>> groups = new LinkedHashMap<>();
+        for (org.springframework.ai.document.Document chunk : chunks) {
+            Object documentId = chunk.getMetadata().get("document_id");
+            String key = documentId != null ? documentId.toString() : chunk.getId();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(chunk);
+        }
+        return groups;
+    }
+
+    /**
+     * Merge chunks of one document that follow each other. Chunks indexed before
+     * chunk_index existed are merged only when their texts overlap.
+     */
+    private List<Passage> mergeNeighbours(List<org.springframework.ai.document.Document> group) {
+        List<org.springframework.ai.document.Document> ordered = new ArrayList<>(group);
+        ordered.sort(Comparator.comparingInt(ContextPacker::chunkIndex));
+
+        List<Passage> passages = new ArrayList<>();
+        StringBuilder text = null;
+        String documentId = null;
+        String title = null;
+        double score = 0;
+        int lastIndex = -2;
+
+        for (org.springframework.ai.document.Document chunk : ordered) {
+            int index = chunkIndex(chunk);
+            String content = chunk.getContent();
+            int overlap = text != null ? overlap(text, content) : 0;
+            boolean adjacent = index >= 0 && lastIndex >= 0 && index == lastIndex + 1;
+
+            if (text != null && (adjacent || overlap > 0)) {
+                if (overlap > 0) {
+                    text.append(content, overlap, content.length());
+                } else {
+                    text.append('\n').append(content);
+                }
+                score = Math.max(score, score(chunk));
+            } else {
+                if (text != null) {
+                    passages.add(new Passage(documentId, title, text.toString(), score));
+                }
+                text = new StringBuilder(content);
+                Object id = chunk.getMetadata().get("document_id");
+                documentId = id != null ? id.toString() : null;
+                title = (String) chunk.getMetadata().get("title");
+                score = score(chunk);
+            }
+            lastIndex = index;
+        }
+        if (text != null) {
+            passages.add(new Passage(documentId, title, text.toString(), score));
+        }
+        return passages;
+    }
+
+    /**
+     * Length of the longest suffix of previous that starts next
+     */
+    private static int overlap(CharSequence previous, String next) {
+        int max = Math.min(MAX_OVERLAP, Math.min(previous.length(), next.length()));
+        for (int k = max; k >= MIN_OVERLAP; k--) {
+            if (regionEquals(previous, previous.length() - k, next, k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean regionEquals(CharSequence a, int offset, String b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(offset + i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNearDuplicate(Set<String> terms, List<Set<String>> packedTerms) {
+        if (terms.isEmpty()) {
+            return false;
+        }
+        for (Set<String> other : packedTerms) {
+            int common = 0;
+            for (String term : terms) {
+                if (other.contains(term)) {
+                    common++;
+                }
+            }
+            int union = terms.size() + other.size() - common;
+            // Jaccard similarity, or a passage almost entirely contained in a kept one
+            if ((double) common / union >= duplicateSimilarity || (double) common / terms.size() >= 0.95) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int chunkIndex(org.springframework.ai.document.Document chunk) {
+        Object index = chunk.getMetadata().get("chunk_index");
+        if (index instanceof Number number) {
+            return number.intValue();
+        }
+        return index != null ? Integer.parseInt(index.toString()) : -1;
+    }
+
+    private static double score(org.springframework.ai.document.Document chunk) {
+        Object score = chunk.getMetadata().get("rrf_score");
+        return score instanceof Number number ? number.doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,235 @@
+package com.korconstructions.service;
+
+import com.korconstructions.dto.IndexProgressDTO;
+import com.korconstructions.model.Document;
+import com.korconstructions.model.IndexStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs document indexing on a bounded background executor and
+ * streams stage updates to subscribed clients over SSE.
+ */
+@Slf4j
+@Service
+public class DocumentIndexingService {
+
+    private static final long SSE_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final DocumentService documentService;
+    private final DocumentRAGService ragService;
+    private final ThreadPoolTaskExecutor indexingExecutor;
+
+    // Live progress of documents currently queued or being indexed
+    private final Map<Long, IndexProgressDTO> progress = new ConcurrentHashMap<>();
+    private final Map<Long, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DocumentIndexingService(DocumentService documentService,
+                                   DocumentRAGService ragService,
+                                   @Qualifier("documentIndexingExecutor") ThreadPoolTaskExecutor indexingExecutor) {
+        this.documentService = documentService;
+        this.ragService = ragService;
+        this.indexingExecutor = indexingExecutor;
+    }
+
+    /**
+     * Queue a stored document for indexing.
+     * @throws TaskRejectedException if the indexing queue is full
+     */
+    public IndexProgressDTO submit(Document document, File file) {
+        Long documentId = document.getId();
+        updateProgress(documentId, IndexStatus.PENDING, 0, 0, "Σε αναμονή για επεξεργασία");
+
+        try {
+            indexingExecutor.execute(() -> runIndexing(documentId, file));
+        } catch (TaskRejectedException e) {
+            // The caller removes the document, so nothing is left behind to retry
+            log.warn("Indexing queue full, rejecting document {}", documentId);
+            finish(documentId);
+            throw e;
+        }
+
+        return progress.get(documentId);
+    }
+
+    /**
+     * Current indexing status, falling back to the persisted status once the job has finished
+     */
+    public IndexProgressDTO getStatus(Long documentId) {
+        IndexProgressDTO live = progress.get(documentId);
+        if (live != null) {
+            return live;
+        }
+
+        Document document = documentService.getDocumentById(documentId);
+        IndexStatus status = document.getIndexStatus();
+        String message = null;
+        if (status == null) {
+            // Documents uploaded before status tracking existed
+            String text = document.getExtractedText();
+            if (text == null) {
+                status = IndexStatus.PENDING;
+            } else if (text.startsWith("Error:")) {
+                status = IndexStatus.FAILED;
+            } else {
+                status = IndexStatus.COMPLETED;
+            }
+        }
+        if (status == IndexStatus.FAILED && document.getExtractedText() != null) {
+            message = document.getExtractedText();
+        }
+        return new IndexProgressDTO(documentId, status, null, null, message, document.getUpdatedAt());
+    }
+
+    /**
+     * Subscribe to progress events for a document. The current status is sent immediately.
+     */
+    public SseEmitter subscribe(Long documentId) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+        IndexProgressDTO current = getStatus(documentId);
+
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(current));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            return emitter;
+        }
+
+        if (current.getStatus().isTerminal()) {
+            emitter.complete();
+            return emitter;
+        }
+
+        List<SseEmitter> list = emitters.computeIfAbsent(documentId, id -> new CopyOnWriteArrayList<>());
+        list.add(emitter);
+        emitter.onCompletion(() -> list.remove(emitter));
+        emitter.onTimeout(() -> list.remove(emitter));
+        emitter.onError(e -> list.remove(emitter));
+
+        // The job may have finished between reading the status and registering the emitter;
+        // finish() drops the live progress before the emitters, so this check cannot miss it
+        if (!progress.containsKey(documentId)) {
+            IndexProgressDTO latest = getStatus(documentId);
+            if (latest.getStatus().isTerminal()) {
+                list.remove(emitter);
+                try {
+                    emitter.send(SseEmitter.event().name("progress").data(latest));
+                    emitter.complete();
+                } catch (IOException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        }
+        return emitter;
+    }
+
+    private void runIndexing(Long documentId, File file) {
+        Document document;
+        try {
+            document = documentService.getDocumentById(documentId);
+        } catch (RuntimeException e) {
+            log.warn("Document {} was removed before indexing started", documentId);
+            finish(documentId);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            // Same contents as an indexed document: reuse its chunks and embeddings
+            Document duplicateOf = documentService.findIndexedDuplicate(document).orElse(null);
+            if (duplicateOf != null && copyIndex(duplicateOf, document)) {
+                log.info("Document {} indexed from duplicate {} in {} ms",
+                    documentId, duplicateOf.getId(), System.currentTimeMillis() - start);
+                updateProgress(documentId, IndexStatus.COMPLETED, 0, 0, "Η επεξεργασία ολοκληρώθηκε");
+                finish(documentId);
+                return;
+            }
+
+            updateProgress(documentId, IndexStatus.EXTRACTING, 0, 0, "Εξαγωγή κειμένου");
+            documentService.updateIndexStatus(documentId, IndexStatus.EXTRACTING);
+
+            String extractedText = ragService.indexDocument(document, file,
+                (status, completed, total, message) -> updateProgress(documentId, status, completed, total, message));
+
+            // Indexing can take minutes; edits made meanwhile are kept and carried to the new chunks
+            ragService.refreshDocumentMetadata(document, documentService.getDocumentById(documentId));
+            documentService.updateIndexResult(documentId, IndexStatus.COMPLETED, extractedText);
+
+            log.info("Document {} indexed in {} ms", documentId, System.currentTimeMillis() - start);
+            updateProgress(documentId, IndexStatus.COMPLETED, 0, 0, "Η επεξεργασία ολοκληρώθηκε");
+        } catch (Exception e) {
+            log.error("Failed to index document for RAG: {}", documentId, e);
+            markFailed(documentId, e.getMessage());
+            return;
+        }
+        finish(documentId);
+    }
+
+    /**
+     * @return false when the duplicate has no chunks to copy, e.g. it was indexed before
+     * chunks were kept, so the document has to be indexed from its file
+     */
+    private boolean copyIndex(Document source, Document target) {
+        int copied = ragService.copyIndex(source, target);
+        if (copied == 0) {
+            return false;
+        }
+        ragService.refreshDocumentMetadata(target, documentService.getDocumentById(target.getId()));
+        documentService.updateIndexResult(target.getId(), IndexStatus.COMPLETED, source.getExtractedText());
+        return true;
+    }
+
+    private void markFailed(Long documentId, String message) {
+        try {
+            documentService.updateIndexResult(documentId, IndexStatus.FAILED, "Error: " + message);
+        } catch (RuntimeException e) {
+            log.warn("Could not persist failed status for document {}: {}", documentId, e.getMessage());
+        }
+        updateProgress(documentId, IndexStatus.FAILED, 0, 0, message);
+        finish(documentId);
+    }
+
+    private void updateProgress(Long documentId, IndexStatus status, int completed, int total, String message) {
+        IndexProgressDTO dto = new IndexProgressDTO(documentId, status,
+            total > 0 ? completed : null, total > 0 ? total : null, message, LocalDateTime.now());
+        progress.put(documentId, dto);
+
+        List<SseEmitter> list = emitters.get(documentId);
+        if (list == null) {
+            return;
+        }
+        for (SseEmitter emitter : list) {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(dto));
+            } catch (Exception e) {
+                list.remove(emitter);
+            }
+        }
+    }
+
+    /**
+     * Close subscriber streams and drop live progress; the status is persisted on the document
+     */
+    private void finish(Long documentId) {
+        // Progress first: subscribe() relies on this order
+        progress.remove(documentId);
+        List<SseEmitter> list = emitters.remove(documentId);
+        if (list != null) {
+            list.forEach(SseEmitter::complete);
+        }
+    }
+}
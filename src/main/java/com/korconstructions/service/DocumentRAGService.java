@@ -1,12 +1,15 @@
 package com.korconstructions.service;
 
 import com.korconstructions.model.Document;
+import com.korconstructions.model.DocumentType;
+import com.korconstructions.model.IndexStatus;
+import com.korconstructions.repository.VectorChunkRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import java.io.File;
 import java.util.HashMap;
@@ -19,19 +22,46 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class DocumentRAGService {
 
-    private final VectorStore vectorStore;
     private final ChatClient.Builder chatClientBuilder;
     private final DocumentTextExtractor textExtractor;
+    private final EmbeddingBatchIndexer batchIndexer;
+    private final VectorChunkRepository chunkRepository;
+    private final LexicalIndex lexicalIndex;
+    private final HybridRetriever hybridRetriever;
+    private final AnswerCacheService answerCache;
+    private final ContextPacker contextPacker;
+
+    @Value("${app.documents.indexing.streaming:true}")
+    private boolean streaming;
+
+    @Value("${app.documents.indexing.extracted-text-preview-chars:20000}")
+    private int previewChars;
 
     /**
      * Index a document by extracting text and storing embeddings in vector database
      * @return the extracted text for storage in the database
      */
     public String indexDocument(Document document, File file) {
+        return indexDocument(document, file, IndexingProgressListener.NONE);
+    }
+
+    /**
+     * Index a document, reporting the extract, chunk and embed-batch stages to the listener
+     * @return the extracted text for storage in the database
+     */
+    public String indexDocument(Document document, File file, IndexingProgressListener listener) {
+        // Drop vectors left from a previous attempt so re-indexing never duplicates chunks
+        deleteDocumentEmbeddings(document.getId());
+
+        if (streaming) {
+            return indexDocumentStreaming(document, file, listener);
+        }
+
         log.info("Indexing document: {} ({})", document.getTitle(), file.getName());
+        listener.onProgress(IndexStatus.EXTRACTING, 0, 0, "Εξαγωγή κειμένου");
 
         // Extract text from document
-        String extractedText = textExtractor.extractText(file);
+        String extractedText = textExtractor.extractText(file, document.getContentHash());
 
         if (extractedText == null || extractedText.trim().isEmpty()) {
             log.error("No text extracted from document: {} - File exists: {}, Size: {}",
@@ -41,112 +71,288 @@ public class DocumentRAGService {
 
         log.info("Extracted {} characters from document: {}", extractedText.length(), document.getTitle());
 
+        listener.onProgress(IndexStatus.CHUNKING, 0, 0,
+            "Εξήχθησαν " + extractedText.length() + " χαρακτήρες");
+
         // Split text into chunks (800 chars with 150 char overlap for better context)
         List<String> chunks = splitIntoChunks(extractedText, 800);
         log.info("Split into {} chunks for document: {}", chunks.size(), document.getTitle());
 
         // Create AI documents with metadata
-        List<org.springframework.ai.document.Document> aiDocuments = chunks.stream()
-            .map(chunk -> {
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("document_id", document.getId().toString());
-                metadata.put("title", document.getTitle());
-                metadata.put("type", document.getType().toString());
-                if (document.getBuilding() != null) {
-                    metadata.put("building_id", document.getBuilding().getId().toString());
-                    metadata.put("building_name", document.getBuilding().getName());
-                }
-
-                return new org.springframework.ai.document.Document(chunk, metadata);
-            })
-            .collect(Collectors.toList());
+        List<org.springframework.ai.document.Document> aiDocuments = new java.util.ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            aiDocuments.add(toChunkDocument(document, chunks.get(i), i));
+        }
 
-        // Store in vector database in smaller batches to avoid token limits
+        // Store in vector database in smaller batches to avoid token limits,
+        // keeping several batches in flight at once
         int batchSize = 10;
         int totalChunks = aiDocuments.size();
+        int totalBatches = (totalChunks + batchSize - 1) / batchSize;
         log.info("=== Starting vector indexing ===");
-        log.info("Total chunks to index: {}, Batch size: {}", totalChunks, batchSize);
-
-        for (int i = 0; i < totalChunks; i += batchSize) {
-            int endIndex = Math.min(i + batchSize, totalChunks);
-            List<org.springframework.ai.document.Document> batch = aiDocuments.subList(i, endIndex);
-            int batchNum = (i / batchSize) + 1;
-            int totalBatches = (totalChunks + batchSize - 1) / batchSize;
-
-            try {
-                log.info("Processing batch {}/{} (chunks {}-{})...",
-                    batchNum, totalBatches, i, endIndex - 1);
-
-                vectorStore.add(batch);
-
-                log.info("✓ Batch {}/{} indexed successfully ({} chunks)",
-                    batchNum, totalBatches, batch.size());
-            } catch (Exception e) {
-                log.error("✗ Failed to index batch {}/{} (chunks {}-{}): {} - {}",
-                    batchNum, totalBatches, i, endIndex - 1,
-                    e.getClass().getSimpleName(), e.getMessage());
-                log.error("Full error:", e);
-                throw new RuntimeException("Failed to create embeddings for document batch " +
-                    batchNum + "/" + totalBatches + ". " + e.getMessage(), e);
+        log.info("Total chunks to index: {}, Batch size: {}, Concurrency: {}",
+            totalChunks, batchSize, batchIndexer.getCurrentConcurrency());
+        listener.onProgress(IndexStatus.EMBEDDING, 0, totalBatches, chunks.size() + " τμήματα");
+
+        EmbeddingBatchIndexer.Session session = batchIndexer.open(document.getTitle(), totalBatches, listener);
+        try {
+            for (int i = 0; i < totalChunks; i += batchSize) {
+                int endIndex = Math.min(i + batchSize, totalChunks);
+                session.submit(aiDocuments.subList(i, endIndex));
             }
+        } catch (RuntimeException e) {
+            session.abort(e);
+            throw e;
         }
+        session.awaitCompletion();
 
         log.info("Successfully indexed {} chunks in {} batches for document: {}",
-            chunks.size(), (totalChunks + batchSize - 1) / batchSize, document.getTitle());
+            chunks.size(), totalBatches, document.getTitle());
+        answerCache.invalidateScope(buildingId(document));
 
         return extractedText;
     }
 
+    /**
+     * Streaming indexing: chunks are cut while the parser is still reading the file and
+     * handed to the batch indexer in groups of 10. Because submitting blocks while the
+     * embedding concurrency limit is reached, peak memory depends on the batch size and
+     * concurrency, not on the document size.
+     * @return the start of the extracted text, capped at the configured preview size
+     */
+    private String indexDocumentStreaming(Document document, File file, IndexingProgressListener listener) {
+        log.info("Indexing document (streaming): {} ({})", document.getTitle(), file.getName());
+        listener.onProgress(IndexStatus.EXTRACTING, 0, 0, "Εξαγωγή κειμένου");
+
+        int batchSize = 10;
+        EmbeddingBatchIndexer.Session session = batchIndexer.open(document.getTitle(), 0, listener);
+        List<org.springframework.ai.document.Document> pending = new java.util.ArrayList<>(batchSize);
+        StringBuilder preview = new StringBuilder();
+        int[] chunkIndex = {0};
+
+        StreamingChunker chunker = new StreamingChunker(800, 150, (chunk, firstPage, lastPage) -> {
+            org.springframework.ai.document.Document chunkDocument = toChunkDocument(document, chunk, chunkIndex[0]++);
+            if (firstPage > 0) {
+                chunkDocument.getMetadata().put("page_start", firstPage);
+                chunkDocument.getMetadata().put("page_end", lastPage);
+            }
+            pending.add(chunkDocument);
+            if (pending.size() == batchSize) {
+                session.submit(new java.util.ArrayList<>(pending));
+                pending.clear();
+                listener.onProgress(IndexStatus.EMBEDDING, session.getCompletedBatches(), session.getSubmittedBatches(), null);
+            }
+        });
+        // The preview is taken from the raw text; chunks would repeat their overlap
+        chunker.addListener(new StreamingChunker.TextListener() {
+            @Override
+            public void onText(CharSequence text) {
+                if (preview.length() < previewChars) {
+                    preview.append(text, 0, Math.min(text.length(), previewChars - preview.length()));
+                }
+            }
+
+            @Override
+            public void onPageStart(int page) {
+            }
+        });
+
+        long characters;
+        try {
+            characters = textExtractor.extractText(file, chunker, document.getContentHash());
+            if (chunker.getChunkCount() == 0) {
+                log.error("No text extracted from document: {} - File exists: {}, Size: {}",
+                    document.getTitle(), file.exists(), file.length());
+                throw new RuntimeException("Failed to extract text from document. The file may be empty, corrupted, or in an unsupported format.");
+            }
+            if (!pending.isEmpty()) {
+                session.submit(new java.util.ArrayList<>(pending));
+                pending.clear();
+            }
+        } catch (RuntimeException e) {
+            session.abort(e);
+            throw e;
+        }
+        session.awaitCompletion();
+
+        log.info("Successfully indexed {} chunks ({} characters) in {} batches for document: {}",
+            chunker.getChunkCount(), characters, session.getSubmittedBatches(), document.getTitle());
+        answerCache.invalidateScope(buildingId(document));
+
+        return preview.toString().trim();
+    }
+
+    /**
+     * @param index position of the chunk in the document, used to merge neighbouring chunks into one passage
+     */
+    private org.springframework.ai.document.Document toChunkDocument(Document document, String chunk, int index) {
+        Map<String, Object> metadata = chunkMetadata(document);
+        metadata.put("chunk_index", index);
+        return new org.springframework.ai.document.Document(chunk, metadata);
+    }
+
+    private Map<String, Object> chunkMetadata(Document document) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", document.getId().toString());
+        metadata.put("title", document.getTitle());
+        metadata.put("type", document.getType().toString());
+        if (document.getBuilding() != null) {
+            metadata.put("building_id", document.getBuilding().getId().toString());
+            metadata.put("building_name", document.getBuilding().getName());
+        }
+        return metadata;
+    }
+
+    /**
+     * Rewrite title, type and building metadata of an indexed document's chunks
+     * without extracting or embedding again
+     */
+    public void updateDocumentMetadata(Document document) {
+        List<String> removedKeys = document.getBuilding() == null
+            ? List.of("building_id", "building_name")
+            : List.of();
+        int updated = chunkRepository.updateDocumentMetadata(document.getId(), chunkMetadata(document), removedKeys);
+        lexicalIndex.updateDocumentMetadata(document.getId(),
+            document.getBuilding() != null ? document.getBuilding().getId().toString() : null,
+            document.getType().toString());
+        log.info("Updated metadata of {} chunks for document {}", updated, document.getId());
+        answerCache.invalidateDocument(document.getId());
+        answerCache.invalidateScope(buildingId(document));
+    }
+
+    /**
+     * Bring the chunks of a document indexed from an older copy of its entity up to date,
+     * e.g. when the title or building was edited while it was being indexed
+     */
+    public void refreshDocumentMetadata(Document indexedAs, Document current) {
+        if (!chunkMetadata(indexedAs).equals(chunkMetadata(current))) {
+            log.info("Document {} was edited while it was indexed, updating its chunks", current.getId());
+            updateDocumentMetadata(current);
+        }
+    }
+
+    /**
+     * Index a document whose file has the same contents as an already indexed one by copying
+     * that document's chunks and embeddings, without extracting or embedding again
+     * @return number of chunks copied
+     */
+    public int copyIndex(Document source, Document target) {
+        deleteDocumentEmbeddings(target.getId());
+        List<String> removedKeys = target.getBuilding() == null
+            ? List.of("building_id", "building_name")
+            : List.of();
+        List<org.springframework.ai.document.Document> copies =
+            chunkRepository.copyDocumentChunks(source.getId(), chunkMetadata(target), removedKeys);
+        copies.forEach(chunk -> lexicalIndex.add(chunk.getId(), chunk.getContent(), chunk.getMetadata()));
+        log.info("Copied {} chunks of document {} to document {}", copies.size(), source.getId(), target.getId());
+        answerCache.invalidateScope(buildingId(target));
+        return copies.size();
+    }
+
+    private Long buildingId(Document document) {
+        return document.getBuilding() != null ? document.getBuilding().getId() : null;
+    }
+
+    /**
+     * Propagate a building rename to the chunks of all its documents
+     */
+    public void updateBuildingName(Long buildingId, String buildingName) {
+        int updated = chunkRepository.updateBuildingName(buildingId, buildingName);
+        log.info("Updated building name on {} chunks of building {}", updated, buildingId);
+        answerCache.invalidateScope(buildingId);
+    }
+
     /**
      * Delete document embeddings from vector store
      */
     public void deleteDocumentEmbeddings(Long documentId) {
-        // Note: Spring AI VectorStore doesn't have built-in delete by metadata
-        // This would require a custom implementation or database-level deletion
-        // For now, we'll log it - you can implement custom deletion logic later
-        log.info("Delete request for document embeddings: {}", documentId);
+        int deleted = chunkRepository.deleteByDocumentId(documentId);
+        lexicalIndex.removeDocument(documentId);
+        log.info("Deleted {} embeddings of document {}", deleted, documentId);
+        answerCache.invalidateDocument(documentId);
     }
 
     /**
      * Ask a question and get AI-powered answer based on document context
      */
     public String askQuestion(String question, Long buildingId) {
+        return askQuestion(question, buildingId, null);
+    }
+
+    /**
+     * Ask a question, restricting retrieval to one building and/or document type.
+     * The filters are part of the similarity query and the BM25 lookup, so the result is
+     * the true top-K within the building instead of the global top-K filtered afterwards.
+     */
+    public String askQuestion(String question, Long buildingId, DocumentType type) {
+        AnswerCacheService.Lookup cached = answerCache.lookup(question, buildingId, type);
+        if (cached.isHit()) {
+            return cached.getHit().answer();
+        }
+
+        PreparedQuestion prepared = prepareQuestion(question, buildingId, type);
+        if (prepared.prompt() == null) {
+            return prepared.noResultsAnswer();
+        }
+
+        log.info("Sending request to OpenAI GPT-4...");
+
+        // Get AI response
+        ChatClient chatClient = chatClientBuilder.build();
+        String response = chatClient.prompt()
+            .user(prepared.prompt())
+            .call()
+            .content();
+
+        log.info("✓ AI response received: {} characters", response.length());
+        log.info("Response preview: '{}'...",
+            response.substring(0, Math.min(150, response.length())).replace("\n", " "));
+        log.info("=== Question Processing Complete ===");
+
+        answerCache.store(cached, response, AnswerCacheService.describeSources(prepared.sources()));
+        return response;
+    }
+
+    /**
+     * Stream the answer for a prepared prompt token by token
+     */
+    public Flux<String> streamAnswer(String prompt) {
+        log.info("Streaming request to OpenAI GPT-4...");
+        return chatClientBuilder.build().prompt()
+            .user(prompt)
+            .stream()
+            .content();
+    }
+
+    /**
+     * Retrieval and prompt assembly shared by the blocking and streaming answers.
+     * When nothing relevant is found the prompt is null and noResultsAnswer holds the reply.
+     */
+    public record PreparedQuestion(List<org.springframework.ai.document.Document> sources,
+                                   String prompt,
+                                   String noResultsAnswer) {
+    }
+
+    public PreparedQuestion prepareQuestion(String question, Long buildingId, DocumentType type) {
         log.info("=== Starting AI Question Processing ===");
         log.info("Question: '{}'", question);
         if (buildingId != null) {
             log.info("Filtering for building ID: {}", buildingId);
         }
-
-        // Search for relevant document chunks
-        // Higher topK and lower threshold to capture related information across chunks
-        SearchRequest searchRequest = SearchRequest.query(question)
-            .withTopK(15)
-            .withSimilarityThreshold(0.4);
-
-        log.info("Searching vector store with topK=15, similarityThreshold=0.4...");
-        List<org.springframework.ai.document.Document> relevantDocs = vectorStore.similaritySearch(searchRequest);
-        log.info("Vector search returned {} chunks", relevantDocs.size());
-
-        // Hybrid approach: If vector search returns few results, try keyword search
-        if (relevantDocs.size() < 5) {
-            log.info("Vector search returned few results, trying keyword-based fallback...");
-            List<org.springframework.ai.document.Document> keywordResults = keywordSearch(question);
-            log.info("Keyword search returned {} additional chunks", keywordResults.size());
-
-            // Merge results, avoiding duplicates
-            for (org.springframework.ai.document.Document keywordDoc : keywordResults) {
-                boolean alreadyExists = relevantDocs.stream()
-                    .anyMatch(doc -> doc.getId().equals(keywordDoc.getId()));
-                if (!alreadyExists) {
-                    relevantDocs.add(keywordDoc);
-                }
-            }
-            log.info("After merging: {} total chunks", relevantDocs.size());
+        if (type != null) {
+            log.info("Filtering for document type: {}", type);
         }
 
+        // Vector and BM25 retrieval run concurrently and are merged by reciprocal rank fusion
+        List<org.springframework.ai.document.Document> relevantDocs =
+            hybridRetriever.retrieve(question, buildingId, type, 15);
+        log.info("Hybrid retrieval returned {} chunks", relevantDocs.size());
+
         if (relevantDocs.isEmpty()) {
             log.warn("No relevant documents found for question");
-            return "Δεν βρέθηκαν σχετικά έγγραφα για την ερώτησή σας.";
+            return new PreparedQuestion(relevantDocs, null, buildingId != null
+                ? "Δεν βρέθηκαν σχετικά έγγραφα για το συγκεκριμένο κτίριο."
+                : "Δεν βρέθηκαν σχετικά έγγραφα για την ερώτησή σας.");
         }
 
         // Log details about retrieved chunks
@@ -160,30 +366,11 @@ public class DocumentRAGService {
                 i + 1, title, docId, contentPreview.replace("\n", " "));
         }
 
-        // Filter by building if specified
-        int beforeFilter = relevantDocs.size();
-        if (buildingId != null) {
-            relevantDocs = relevantDocs.stream()
-                .filter(doc -> {
-                    Object bldgId = doc.getMetadata().get("building_id");
-                    return bldgId != null && bldgId.toString().equals(buildingId.toString());
-                })
-                .collect(Collectors.toList());
-            log.info("After building filter: {} -> {} chunks", beforeFilter, relevantDocs.size());
-        }
-
-        if (relevantDocs.isEmpty()) {
-            log.warn("No documents found after building filter");
-            return "Δεν βρέθηκαν σχετικά έγγραφα για το συγκεκριμένο κτίριο.";
-        }
-
-        // Build context from relevant documents
+        // Build context from relevant documents: neighbouring chunks merged, duplicates dropped,
+        // cut at the token budget
         log.info("Building context from {} chunks...", relevantDocs.size());
-        String context = relevantDocs.stream()
-            .map(doc -> {
-                String title = (String) doc.getMetadata().get("title");
-                return "Από έγγραφο '" + title + "':\n" + doc.getContent();
-            })
+        String context = contextPacker.pack(relevantDocs).stream()
+            .map(passage -> "Από έγγραφο '" + passage.title() + "':\n" + passage.text())
             .collect(Collectors.joining("\n\n---\n\n"));
 
         int contextLength = context.length();
@@ -205,21 +392,8 @@ public class DocumentRAGService {
 
         log.info("Prompt created: {} ", prompt);
         log.info("Prompt created: {} characters total", prompt.length());
-        log.info("Sending request to OpenAI GPT-4...");
-
-        // Get AI response
-        ChatClient chatClient = chatClientBuilder.build();
-        String response = chatClient.prompt()
-            .user(prompt)
-            .call()
-            .content();
-
-        log.info("✓ AI response received: {} characters", response.length());
-        log.info("Response preview: '{}'...",
-            response.substring(0, Math.min(150, response.length())).replace("\n", " "));
-        log.info("=== Question Processing Complete ===");
 
-        return response;
+        return new PreparedQuestion(relevantDocs, prompt, null);
     }
 
     /**
@@ -327,60 +501,4 @@ public class DocumentRAGService {
         log.info("Created {} chunks from text", chunks.size());
         return chunks;
     }
-
-    /**
-     * Keyword-based search fallback for Greek text
-     * Extracts Greek words from question and searches vector store content
-     */
-    private List<org.springframework.ai.document.Document> keywordSearch(String question) {
-        // Extract Greek keywords (words with 4+ characters, ignoring common words)
-        String[] commonWords = {"μπορεις", "πεις", "λεει", "συγγραφη", "υποχρεωσεων", "για", "τις", "τους", "την", "του", "στην", "στο", "στον", "και", "ειναι", "θα", "με", "από", "που", "αυτο", "αυτη", "αυτος"};
-
-        String[] words = question.toLowerCase()
-            .replaceAll("[.,;:!?]", "")
-            .split("\\s+");
-
-        List<String> keywords = new java.util.ArrayList<>();
-        for (String word : words) {
-            if (word.length() >= 4 && !java.util.Arrays.asList(commonWords).contains(word)) {
-                keywords.add(word);
-            }
-        }
-
-        log.info("Extracted keywords: {}", keywords);
-
-        if (keywords.isEmpty()) {
-            return new java.util.ArrayList<>();
-        }
-
-        // Search vector store directly via similarity search with extracted keywords
-        // This is a simplified approach - in production you'd use a custom repository query
-        List<org.springframework.ai.document.Document> results = new java.util.ArrayList<>();
-
-        for (String keyword : keywords) {
-            try {
-                SearchRequest keywordRequest = SearchRequest.query(keyword)
-                    .withTopK(5)
-                    .withSimilarityThreshold(0.3);
-                List<org.springframework.ai.document.Document> keywordDocs = vectorStore.similaritySearch(keywordRequest);
-
-                for (org.springframework.ai.document.Document doc : keywordDocs) {
-                    // Check if content actually contains the keyword (case-insensitive)
-                    if (doc.getContent().toLowerCase().contains(keyword)) {
-                        boolean exists = results.stream()
-                            .anyMatch(r -> r.getId().equals(doc.getId()));
-                        if (!exists) {
-                            results.add(doc);
-                            log.info("Found chunk via keyword '{}': {}", keyword,
-                                doc.getContent().substring(0, Math.min(80, doc.getContent().length())));
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Keyword search failed for '{}': {}", keyword, e.getMessage());
-            }
-        }
-
-        return results;
-    }
 }
@@ -2,6 +2,7 @@ package com.korconstructions.service;
 
 import com.korconstructions.model.Document;
 import com.korconstructions.model.DocumentType;
+import com.korconstructions.model.IndexStatus;
 import com.korconstructions.repository.DocumentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,11 +11,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -22,6 +25,7 @@ import java.util.UUID;
 public class DocumentService {
 
     private final DocumentRepository documentRepository;
+    private final ContentAddressedStorage storage;
 
     @Transactional(readOnly = true)
     public List<Document> getAllDocuments() {
@@ -54,41 +58,69 @@ public class DocumentService {
         return documentRepository.save(document);
     }
 
+    /**
+     * Set the index status without touching the other columns
+     */
+    @Transactional
+    public void updateIndexStatus(Long id, IndexStatus status) {
+        documentRepository.updateIndexStatus(id, status, LocalDateTime.now());
+    }
+
+    /**
+     * Store the outcome of indexing without touching the other columns
+     */
+    @Transactional
+    public void updateIndexResult(Long id, IndexStatus status, String extractedText) {
+        documentRepository.updateIndexResult(id, status, extractedText, LocalDateTime.now());
+    }
+
     @Transactional
     public void deleteDocument(Long id) {
         Document document = getDocumentById(id);
 
-        // Delete physical file if exists
-        if (document.getFilePath() != null) {
-            try {
-                Path filePath = Paths.get(document.getFilePath());
-                Files.deleteIfExists(filePath);
-            } catch (IOException e) {
-                log.error("Failed to delete file: {}", document.getFilePath(), e);
-            }
-        }
-
         documentRepository.deleteById(id);
+
+        // Delete the physical file unless another document was uploaded with the same contents
+        String filePath = document.getFilePath();
+        if (filePath != null) {
+            storage.release(Paths.get(filePath), () -> documentRepository.countByFilePath(filePath));
+        }
     }
 
-    public String saveUploadedFile(MultipartFile file, String uploadDir) throws IOException {
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(uploadDir);
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
+    /**
+     * Store an upload under its content hash; an upload identical to a stored file is not written again
+     */
+    public ContentAddressedStorage.StoredFile saveUploadedFile(MultipartFile file, String uploadDir) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return storage.store(in, Paths.get(uploadDir));
         }
+    }
 
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename != null && originalFilename.contains(".")
-            ? originalFilename.substring(originalFilename.lastIndexOf("."))
-            : "";
-        String uniqueFilename = UUID.randomUUID().toString() + extension;
+    /**
+     * Store an upload read straight from the request body, in one pass and without buffering it
+     * @param head receives the leading bytes of the file for type detection
+     */
+    public ContentAddressedStorage.StoredFile saveUploadedStream(InputStream body, String uploadDir,
+                                                                 long maxBytes, ByteBuffer head) throws IOException {
+        return storage.store(Channels.newChannel(body), Paths.get(uploadDir), maxBytes, head);
+    }
 
-        // Save file
-        Path filePath = uploadPath.resolve(uniqueFilename);
-        Files.copy(file.getInputStream(), filePath);
+    /**
+     * Let deletes of other documents remove the stored file again, once its document is saved
+     */
+    public void settleUploadedFile(ContentAddressedStorage.StoredFile stored) {
+        storage.settle(stored);
+    }
 
-        return filePath.toString();
+    /**
+     * An indexed document whose file has the given contents, other than the document itself
+     */
+    @Transactional(readOnly = true)
+    public Optional<Document> findIndexedDuplicate(Document document) {
+        if (document.getContentHash() == null) {
+            return Optional.empty();
+        }
+        return documentRepository.findFirstByContentHashAndIndexStatusAndIdNot(
+            document.getContentHash(), IndexStatus.COMPLETED, document.getId());
     }
 }
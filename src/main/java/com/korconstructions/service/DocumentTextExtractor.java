@@ -1,25 +1,89 @@
 package com.korconstructions.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.util.HexFormat;
 
+/**
+ * Text extraction for uploaded documents. The media type comes from the file's magic bytes,
+ * and each file is parsed once: PDFs by PDFBox, everything else (and PDFs PDFBox could not
+ * read) by Tika, in isolated worker processes unless that is switched off. Inside those
+ * workers XLSX workbooks are read row by row (see {@link XlsxStreamingParser}).
+ * Results are kept in the extraction cache, so a file with the same contents is not parsed again.
+ */
 @Slf4j
 @Service
 public class DocumentTextExtractor {
 
+    /**
+     * Part of the extraction cache key; bump when a change here alters the extracted text
+     */
+    public static final int EXTRACTOR_VERSION = 4;
+
+    private final Detector tikaDetector;
+    private final Parser tikaParser;
+    private final PdfPageExtractor pdfPageExtractor;
+    private final ExtractedTextCache textCache;
+
+    @Autowired
+    public DocumentTextExtractor(Detector tikaDetector,
+                                 @Qualifier("extractionParser") Parser tikaParser,
+                                 PdfPageExtractor pdfPageExtractor,
+                                 ExtractedTextCache textCache) {
+        this.tikaDetector = tikaDetector;
+        this.tikaParser = tikaParser;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.textCache = textCache;
+    }
+
     /**
      * Extracts text from a document file (PDF, DOCX, TXT, etc.)
      */
     public String extractText(File file) {
+        return extractText(file, (String) null);
+    }
+
+    /**
+     * @param contentHash hex SHA-256 of the file when already known, so it is not read again to hash it
+     */
+    public String extractText(File file, String contentHash) {
+        byte[] cacheKey = cacheKey(file, contentHash);
+        if (cacheKey != null) {
+            String cached = textCache.get(cacheKey);
+            if (cached != null) {
+                log.info("Extracted text of {} found in cache: {} characters", file.getName(), cached.length());
+                return cached;
+            }
+        }
+
+        String text = extractTextUncached(file);
+        if (cacheKey != null && text != null && !text.trim().isEmpty()) {
+            try (ExtractedTextCache.Recording recording = startRecording(cacheKey)) {
+                if (recording != null) {
+                    recording.onText(text);
+                    recording.commit();
+                }
+            }
+        }
+        return text;
+    }
+
+    /**
+     * extractText without the extraction cache, e.g. to measure the parsers
+     */
+    public String extractTextUncached(File file) {
         log.info("=== Starting text extraction ===");
         log.info("File: {}, Exists: {}, Size: {} bytes", file.getName(), file.exists(), file.length());
 
@@ -44,14 +108,119 @@ public class DocumentTextExtractor {
         return tikaText;
     }
 
+    /**
+     * Streaming variant of extractText: text is handed to the chunker as the parser
+     * produces it instead of being collected into one String.
+     * @return number of characters extracted
+     */
+    public long extractText(File file, StreamingChunker chunker) {
+        return extractText(file, chunker, null);
+    }
+
+    /**
+     * @param contentHash hex SHA-256 of the file when already known, so it is not read again to hash it
+     */
+    public long extractText(File file, StreamingChunker chunker, String contentHash) {
+        byte[] cacheKey = cacheKey(file, contentHash);
+        if (cacheKey == null) {
+            return extractStreaming(file, chunker);
+        }
+        if (textCache.replay(cacheKey, chunker)) {
+            chunker.finish();
+            log.info("Replayed {} cached characters of {} into {} chunks",
+                chunker.getTotalCharacters(), file.getName(), chunker.getChunkCount());
+            return chunker.getTotalCharacters();
+        }
+
+        try (ExtractedTextCache.Recording recording = startRecording(cacheKey)) {
+            if (recording == null) {
+                return extractStreaming(file, chunker);
+            }
+            chunker.addListener(recording);
+            long characters;
+            try {
+                characters = extractStreaming(file, chunker);
+            } finally {
+                chunker.removeListener(recording);
+            }
+            if (characters > 0) {
+                recording.commit();
+            }
+            return characters;
+        }
+    }
+
+    private byte[] cacheKey(File file, String contentHash) {
+        return contentHash != null
+            ? textCache.keyFor(HexFormat.of().parseHex(contentHash), EXTRACTOR_VERSION)
+            : textCache.keyFor(file, EXTRACTOR_VERSION);
+    }
+
+    private ExtractedTextCache.Recording startRecording(byte[] cacheKey) {
+        try {
+            return textCache.record(cacheKey);
+        } catch (IOException e) {
+            log.warn("Could not record extracted text for the cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private long extractStreaming(File file, StreamingChunker chunker) {
+        log.info("=== Starting streaming text extraction ===");
+        log.info("File: {}, Exists: {}, Size: {} bytes", file.getName(), file.exists(), file.length());
+
+        String mimeType = detectMimeType(file);
+        log.info("Detected MIME type: {}", mimeType);
+
+        if ("application/pdf".equals(mimeType)) {
+            log.info("Attempting streaming PDF extraction with PDFBox...");
+            try {
+                pdfPageExtractor.extract(file, (page, text) -> {
+                    chunker.startPage(page);
+                    chunker.append(text);
+                });
+            } catch (Exception e) {
+                if (chunker.hasContent()) {
+                    throw new RuntimeException("PDF extraction failed part way: " + e.getMessage(), e);
+                }
+                log.error("PDFBox extraction failed for {}: {} - {}",
+                    file.getName(), e.getClass().getSimpleName(), e.getMessage());
+            }
+            if (chunker.hasContent()) {
+                chunker.finish();
+                log.info("PDFBox streamed {} characters into {} chunks",
+                    chunker.getTotalCharacters(), chunker.getChunkCount());
+                return chunker.getTotalCharacters();
+            }
+            log.warn("PDFBox extraction returned empty text, falling back to Tika");
+        }
+
+        log.info("Attempting streaming extraction with Apache Tika...");
+        Metadata metadata = new Metadata();
+        try (TikaInputStream stream = TikaInputStream.get(file.toPath(), metadata)) {
+            tikaParser.parse(stream, new BodyContentHandler(new ChunkingContentHandler(chunker)), metadata,
+                new ParseContext());
+        } catch (Exception e) {
+            if (chunker.hasContent()) {
+                throw new RuntimeException("Tika extraction failed part way: " + e.getMessage(), e);
+            }
+            log.error("Tika extraction failed for {}: {} - {}",
+                file.getName(), e.getClass().getSimpleName(), e.getMessage(), e);
+        }
+        chunker.finish();
+        log.info("Tika streamed {} characters into {} chunks",
+            chunker.getTotalCharacters(), chunker.getChunkCount());
+        return chunker.getTotalCharacters();
+    }
+
     /**
      * Extract text from PDF using PDFBox
      */
     private String extractTextFromPDF(File file) {
-        try (PDDocument document = PDDocument.load(file)) {
-            log.info("PDF loaded successfully, pages: {}", document.getNumberOfPages());
-            PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
+        try {
+            StringBuilder builder = new StringBuilder();
+            pdfPageExtractor.extract(file, (page, pageText) -> builder.append(pageText));
+            String text = builder.toString();
             log.info("PDFBox extracted {} characters", text != null ? text.length() : 0);
             return text;
         } catch (Exception e) {
@@ -65,13 +234,12 @@ public class DocumentTextExtractor {
      * Extract text using Apache Tika (supports many formats)
      */
     private String extractTextWithTika(File file) {
-        try (InputStream stream = new FileInputStream(file)) {
+        Metadata metadata = new Metadata();
+        try (TikaInputStream stream = TikaInputStream.get(file.toPath(), metadata)) {
             BodyContentHandler handler = new BodyContentHandler(-1); // No limit
-            Metadata metadata = new Metadata();
-            AutoDetectParser parser = new AutoDetectParser();
 
             log.info("Starting Tika parse...");
-            parser.parse(stream, handler, metadata);
+            tikaParser.parse(stream, handler, metadata, new ParseContext());
             String text = handler.toString();
             log.info("Tika extracted {} characters", text != null ? text.length() : 0);
 
@@ -87,17 +255,33 @@ public class DocumentTextExtractor {
     }
 
     /**
-     * Detect MIME type of file
+     * Detect MIME type of file from its leading bytes, without parsing it. Office formats are
+     * zip containers, for which Tika also reads the zip directory.
      */
-    private String detectMimeType(File file) {
-        try (InputStream stream = new FileInputStream(file)) {
-            Metadata metadata = new Metadata();
-            AutoDetectParser parser = new AutoDetectParser();
-            parser.parse(stream, new BodyContentHandler(-1), metadata);
-            return metadata.get("Content-Type");
-        } catch (Exception e) {
+    public String detectMimeType(File file) {
+        Metadata metadata = new Metadata();
+        try (TikaInputStream stream = TikaInputStream.get(file.toPath(), metadata)) {
+            return tikaDetector.detect(stream, metadata).getBaseType().toString();
+        } catch (IOException e) {
             log.error("Failed to detect MIME type for: {}", file.getName(), e);
             return "application/octet-stream";
         }
     }
+
+    /**
+     * Detect MIME type from the leading bytes of a file that is still being received.
+     * Without the zip directory, Office formats are told apart by the file name.
+     */
+    public String detectMimeType(byte[] head, String fileName) {
+        Metadata metadata = new Metadata();
+        if (fileName != null) {
+            metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, fileName);
+        }
+        try (TikaInputStream stream = TikaInputStream.get(head)) {
+            return tikaDetector.detect(stream, metadata).getBaseType().toString();
+        } catch (IOException e) {
+            log.error("Failed to detect MIME type for: {}", fileName, e);
+            return "application/octet-stream";
+        }
+    }
 }
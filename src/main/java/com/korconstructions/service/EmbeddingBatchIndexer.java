@@ -0,0 +1,422 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.IndexStatus;
+import com.korconstructions.repository.VectorChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes embedding batches to the vector store with several batches in flight.
+ * Chunks already in the embedding cache skip the embedding API entirely.
+ * The number of concurrent batches adapts to the embedding API: it halves when the
+ * API answers 429 or 503 or a call times out, and slowly grows back while calls succeed.
+ * The limit is shared by all indexing jobs because the rate limit applies per API key.
+ */
+@Slf4j
+@Service
+public class EmbeddingBatchIndexer {
+
+    private final VectorStore vectorStore;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingCacheService embeddingCache;
+    private final VectorChunkRepository chunkRepository;
+    private final LexicalIndex lexicalIndex;
+    private final ThreadPoolTaskExecutor embeddingExecutor;
+    private final AdaptiveLimiter limiter;
+
+    private static final Pattern AI_ERROR_STATUS = Pattern.compile("(\\d{3}) - ");
+
+    @Value("${app.documents.embedding.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${app.documents.embedding.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${app.documents.embedding.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    @Autowired
+    public EmbeddingBatchIndexer(VectorStore vectorStore,
+                                 EmbeddingModel embeddingModel,
+                                 EmbeddingCacheService embeddingCache,
+                                 VectorChunkRepository chunkRepository,
+                                 LexicalIndex lexicalIndex,
+                                 @Qualifier("embeddingExecutor") ThreadPoolTaskExecutor embeddingExecutor,
+                                 @Value("${app.documents.embedding.concurrency:4}") int concurrency) {
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.chunkRepository = chunkRepository;
+        this.lexicalIndex = lexicalIndex;
+        this.embeddingExecutor = embeddingExecutor;
+        this.limiter = new AdaptiveLimiter(Math.max(1, concurrency));
+    }
+
+    /**
+     * Start a new indexing session for one document
+     */
+    public Session open(String label, int totalBatches, IndexingProgressListener listener) {
+        return new Session(label, totalBatches, listener);
+    }
+
+    /**
+     * Current number of batches allowed in flight
+     */
+    public int getCurrentConcurrency() {
+        return limiter.currentLimit();
+    }
+
+    /**
+     * One document's batches. Submitting blocks while the concurrency limit is reached,
+     * so callers cannot produce batches faster than they are embedded.
+     * If any batch fails, every chunk already written by the session is removed again.
+     */
+    public class Session {
+
+        private final String label;
+        private final IndexingProgressListener listener;
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final ConcurrentLinkedQueue<String> writtenIds = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicInteger completedBatches = new AtomicInteger();
+        private volatile int totalBatches;
+        private int submittedBatches;
+
+        private Session(String label, int totalBatches, IndexingProgressListener listener) {
+            this.label = label;
+            this.totalBatches = totalBatches;
+            this.listener = listener;
+        }
+
+        public void submit(List<org.springframework.ai.document.Document> batch) {
+            if (failure.get() != null) {
+                abort(failure.get());
+                throwIfFailed();
+            }
+            int batchNum = ++submittedBatches;
+            if (batchNum > totalBatches) {
+                totalBatches = batchNum;
+            }
+
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to index " + label, e);
+            }
+
+            try {
+                futures.add(embeddingExecutor.submit(() -> runBatch(batch, batchNum)));
+            } catch (RuntimeException e) {
+                limiter.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Wait for all submitted batches. On failure the written chunks are rolled back
+         * and the first error is rethrown.
+         */
+        public void awaitCompletion() {
+            awaitAll();
+            throwIfFailed();
+        }
+
+        /**
+         * Remove everything this session wrote, e.g. when the producer failed before completion.
+         * Batches that have not started return at once; batches in flight finish their writes
+         * first, so the rollback sees every chunk they stored.
+         */
+        public void abort(Throwable cause) {
+            failure.compareAndSet(null, cause);
+            awaitAll();
+            rollback();
+        }
+
+        /**
+         * Wait until every submitted batch has really finished. Futures are never cancelled:
+         * a cancelled future reports done while its batch may still be writing, and a queued
+         * batch that never runs would never release its limiter permit.
+         */
+        private void awaitAll() {
+            boolean interrupted = false;
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // Remaining batches skip their work, but they are still waited for
+                        interrupted = true;
+                        failure.compareAndSet(null, e);
+                    } catch (ExecutionException e) {
+                        failure.compareAndSet(null, e.getCause());
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public int getSubmittedBatches() {
+            return submittedBatches;
+        }
+
+        public int getCompletedBatches() {
+            return completedBatches.get();
+        }
+
+        private void runBatch(List<org.springframework.ai.document.Document> batch, int batchNum) {
+            try {
+                if (failure.get() != null) {
+                    return;
+                }
+                log.info("Processing batch {} of {} ({} chunks)...", batchNum, label, batch.size());
+                // Recorded up front, so a batch that fails half-way is rolled back too
+                batch.forEach(doc -> writtenIds.add(doc.getId()));
+                embedAndStore(batch, batchNum);
+
+                int done = completedBatches.incrementAndGet();
+                log.info("✓ Batch {}/{} of {} indexed successfully ({} chunks)",
+                    batchNum, totalBatches, label, batch.size());
+                listener.onProgress(IndexStatus.EMBEDDING, done, totalBatches, null);
+            } catch (RuntimeException e) {
+                log.error("✗ Failed to index batch {} of {}: {} - {}",
+                    batchNum, label, e.getClass().getSimpleName(), e.getMessage());
+                failure.compareAndSet(null, new RuntimeException("Failed to create embeddings for document batch " +
+                    batchNum + "/" + totalBatches + ". " + e.getMessage(), e));
+            } finally {
+                limiter.release();
+            }
+        }
+
+        private void throwIfFailed() {
+            Throwable error = failure.get();
+            if (error == null) {
+                return;
+            }
+            rollback();
+            if (error instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(error.getMessage(), error);
+        }
+
+        private void rollback() {
+            List<String> ids = new ArrayList<>();
+            String id;
+            while ((id = writtenIds.poll()) != null) {
+                ids.add(id);
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            try {
+                vectorStore.delete(ids);
+                lexicalIndex.removeChunks(ids);
+                log.info("Rolled back {} chunks of {}", ids.size(), label);
+            } catch (Exception e) {
+                log.error("Failed to roll back {} chunks of {}", ids.size(), label, e);
+            }
+        }
+    }
+
+    /**
+     * Embed the chunks that are not in the embedding cache and write the whole batch
+     * straight into the vector table
+     */
+    private void embedAndStore(List<org.springframework.ai.document.Document> batch, int batchNum) {
+        List<String> texts = batch.stream().map(org.springframework.ai.document.Document::getContent).toList();
+        float[][] vectors = embeddingCache.lookup(texts);
+        Map<String, List<Integer>> missing = embeddingCache.groupMisses(texts, vectors);
+
+        if (!missing.isEmpty()) {
+            List<String> toEmbed = missing.values().stream().map(indexes -> texts.get(indexes.get(0))).toList();
+            long start = System.nanoTime();
+            List<float[]> embedded = callWithBackoff(() -> embeddingModel.embed(toEmbed), batchNum);
+            embeddingCache.recordEmbeddingCall(toEmbed.size(), System.nanoTime() - start);
+
+            int k = 0;
+            for (List<Integer> indexes : missing.values()) {
+                float[] vector = embedded.get(k++);
+                indexes.forEach(i -> vectors[i] = vector);
+            }
+            embeddingCache.store(toEmbed, embedded);
+        }
+        if (missing.size() < texts.size()) {
+            log.info("Batch {} of {}: {} of {} chunks served from embedding cache",
+                batchNum, label(batch), texts.size() - missing.values().stream().mapToInt(List::size).sum(),
+                texts.size());
+        }
+
+        chunkRepository.insert(batch, Arrays.asList(vectors));
+        batch.forEach(chunk -> lexicalIndex.add(chunk.getId(), chunk.getContent(), chunk.getMetadata()));
+    }
+
+    private String label(List<org.springframework.ai.document.Document> batch) {
+        Object title = batch.get(0).getMetadata().get("title");
+        return title != null ? title.toString() : "document";
+    }
+
+    private <T> T callWithBackoff(Supplier<T> call, int batchNum) {
+        int attempt = 0;
+        while (true) {
+            try {
+                T result = call.get();
+                limiter.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isThrottled(e) || attempt >= maxRetries) {
+                    throw e;
+                }
+                limiter.onThrottle();
+                long backoff = Math.min(maxBackoffMs, initialBackoffMs << attempt);
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                attempt++;
+                log.warn("Embedding API throttled batch {} ({}), retry {}/{} in {} ms, concurrency now {}",
+                    batchNum, e.getMessage(), attempt, maxRetries, backoff, limiter.currentLimit());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * True when the embedding API answered 429 Too Many Requests or 503 Service Unavailable, or
+     * did not answer in time (an overloaded API often just stops answering). Anything else,
+     * including refused connections and DNS failures, fails the batch straight away.
+     */
+    static boolean isThrottled(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RestClientResponseException response) {
+                return isThrottleStatus(response.getStatusCode().value());
+            }
+            // Spring AI's error handler puts the HTTP status at the start of the message, e.g. "429 - {...}"
+            if ((t instanceof TransientAiException || t instanceof NonTransientAiException) && t.getMessage() != null) {
+                Matcher status = AI_ERROR_STATUS.matcher(t.getMessage());
+                return status.lookingAt() && isThrottleStatus(Integer.parseInt(status.group(1)));
+            }
+            if (t instanceof ResourceAccessException) {
+                return isTimeout(t);
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isThrottleStatus(int status) {
+        return status == 429 || status == 503;
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable t = error; t != null && t.getCause() != t; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException || t instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Additive-increase / multiplicative-decrease limit on in-flight batches
+     */
+    static class AdaptiveLimiter {
+
+        private final int maxLimit;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        private double limit;
+        private int inFlight;
+
+        AdaptiveLimiter(int maxLimit) {
+            this.maxLimit = maxLimit;
+            this.limit = maxLimit;
+        }
+
+        void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (inFlight >= (int) limit) {
+                    available.await();
+                }
+                inFlight++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                inFlight--;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onSuccess() {
+            lock.lock();
+            try {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void onThrottle() {
+            lock.lock();
+            try {
+                limit = Math.max(1.0, limit / 2);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int currentLimit() {
+            lock.lock();
+            try {
+                return (int) limit;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
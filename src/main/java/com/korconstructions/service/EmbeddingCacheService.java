@@ -0,0 +1,188 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.EmbeddingCacheEntry;
+import com.korconstructions.repository.EmbeddingCacheRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of chunk embeddings keyed by a hash of the embedding model name
+ * and the normalized chunk text, so identical boilerplate is embedded only once.
+ */
+@Slf4j
+@Service
+public class EmbeddingCacheService {
+
+    private final EmbeddingCacheRepository cacheRepository;
+
+    @Value("${app.documents.embedding-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}")
+    private String modelName;
+
+    // Used only to estimate the money saved by cache hits
+    @Value("${app.documents.embedding-cache.price-per-million-tokens:0.10}")
+    private double pricePerMillionTokens;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedCharacters = new AtomicLong();
+    private final AtomicLong embeddedChunks = new AtomicLong();
+    private final AtomicLong embeddingNanos = new AtomicLong();
+
+    @Autowired
+    public EmbeddingCacheService(EmbeddingCacheRepository cacheRepository) {
+        this.cacheRepository = cacheRepository;
+    }
+
+    /**
+     * Look up cached embeddings for the given texts.
+     * @return one entry per text, null where the cache has no vector
+     */
+    public float[][] lookup(List<String> texts) {
+        float[][] result = new float[texts.size()][];
+        if (!enabled || texts.isEmpty()) {
+            misses.addAndGet(texts.size());
+            return result;
+        }
+
+        List<String> keys = texts.stream().map(this::cacheKey).toList();
+        Map<String, EmbeddingCacheEntry> found = new HashMap<>();
+        cacheRepository.findAllById(keys).forEach(entry -> found.put(entry.getContentHash(), entry));
+
+        for (int i = 0; i < texts.size(); i++) {
+            EmbeddingCacheEntry entry = found.get(keys.get(i));
+            if (entry != null) {
+                result[i] = fromBytes(entry.getEmbedding());
+                hits.incrementAndGet();
+                savedCharacters.addAndGet(texts.get(i).length());
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Store freshly computed embeddings
+     */
+    public void store(List<String> texts, List<float[]> embeddings) {
+        if (!enabled) {
+            return;
+        }
+
+        // Duplicates inside the batch are written once
+        Map<String, float[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            entries.put(cacheKey(texts.get(i)), embeddings.get(i));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int inserted = 0;
+        for (Map.Entry<String, float[]> entry : entries.entrySet()) {
+            float[] vector = entry.getValue();
+            // Another batch may cache the same text concurrently; the insert is then skipped
+            inserted += cacheRepository.insertIfAbsent(entry.getKey(), modelName, vector.length, toBytes(vector), now);
+        }
+        if (inserted < entries.size()) {
+            log.debug("{} of {} embeddings were already cached", entries.size() - inserted, entries.size());
+        }
+    }
+
+    /**
+     * Record how long the embedding model took for a number of chunks
+     */
+    public void recordEmbeddingCall(int chunkCount, long nanos) {
+        embeddedChunks.addAndGet(chunkCount);
+        embeddingNanos.addAndGet(nanos);
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        long embedded = embeddedChunks.get();
+        double avgMsPerChunk = embedded > 0 ? embeddingNanos.get() / 1_000_000.0 / embedded : 0;
+        // Rough estimate: about 4 characters per token
+        double savedTokens = savedCharacters.get() / 4.0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("model", modelName);
+        stats.put("entries", cacheRepository.count());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0);
+        stats.put("avgEmbeddingMsPerChunk", avgMsPerChunk);
+        stats.put("estimatedSavedMs", Math.round(hitCount * avgMsPerChunk));
+        stats.put("estimatedSavedTokens", Math.round(savedTokens));
+        stats.put("estimatedSavedUsd", savedTokens / 1_000_000.0 * pricePerMillionTokens);
+        return stats;
+    }
+
+    String cacheKey(String text) {
+        String normalized = normalize(text);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Unicode NFC with whitespace runs collapsed, so re-extracted text with different
+     * line breaks still maps to the same entry
+     */
+    static String normalize(String text) {
+        String nfc = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return nfc.replaceAll("\\s+", " ").trim();
+    }
+
+    static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    static float[] fromBytes(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Group indexes of texts that still need embedding by cache key, so duplicates
+     * inside one batch are sent to the model only once
+     */
+    Map<String, List<Integer>> groupMisses(List<String> texts, float[][] cached) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (cached[i] == null) {
+                groups.computeIfAbsent(cacheKey(texts.get(i)), k -> new ArrayList<>()).add(i);
+            }
+        }
+        return groups;
+    }
+}
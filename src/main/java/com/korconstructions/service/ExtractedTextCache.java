@@ -0,0 +1,413 @@
+package com.korconstructions.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Disk cache of extracted document text, so re-indexing a file (after a chunking or embedding
+ * change, or when the same file is uploaded twice) skips the PDFBox/Tika parse.
+ * Entries are keyed by SHA-256 of the file contents and the extractor version, located through
+ * a memory-mapped hash index, and stored deflated in an append-only data file together with
+ * the character offsets where pages start. Text is recorded and replayed as a stream, so a
+ * large document is never held in memory.
+ */
+@Slf4j
+@Component
+public class ExtractedTextCache {
+
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+    @Value("${app.documents.extraction-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.documents.extraction-cache.directory:${app.data.directory}/extraction-cache}")
+    private String directory;
+
+    @Value("${app.documents.extraction-cache.max-size-mb:2048}")
+    private long maxSizeMb;
+
+    private final Object lock = new Object();
+    private MappedHashIndex index;
+    private FileChannel data;
+    private long dataSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong skippedFull = new AtomicLong();
+
+    @PostConstruct
+    void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            index = new MappedHashIndex(dir.resolve("index.bin"), INITIAL_INDEX_CAPACITY);
+            data = FileChannel.open(dir.resolve("data.bin"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            dataSize = data.size();
+            log.info("Extraction cache opened: {} entries, {} KB", index.getCount(), dataSize / 1024);
+        } catch (IOException e) {
+            log.warn("Could not open the extraction cache in {}, extracting without it: {}", directory, e.getMessage());
+            enabled = false;
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        synchronized (lock) {
+            try {
+                if (index != null) {
+                    index.close();
+                }
+                if (data != null) {
+                    data.close();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close the extraction cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * SHA-256 of a file's contents
+     */
+    public static byte[] sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Cache key of a file for the given extractor version, or null when the cache is off
+     * or the file cannot be read
+     */
+    public byte[] keyFor(File file, int extractorVersion) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return keyFor(sha256(file), extractorVersion);
+        } catch (IOException e) {
+            log.warn("Could not hash {} for the extraction cache: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cache key for a file whose SHA-256 is already known, e.g. hashed while it was uploaded
+     */
+    public byte[] keyFor(byte[] fileHash, int extractorVersion) {
+        if (!enabled) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        digest.update(fileHash);
+        digest.update(ByteBuffer.allocate(4).putInt(extractorVersion).array());
+        return digest.digest();
+    }
+
+    /**
+     * Feed cached text and page starts to the chunker as the extractor would have
+     * @return false on a miss, leaving the chunker untouched
+     */
+    public boolean replay(byte[] key, StreamingChunker chunker) {
+        return replay(key, new StreamingChunker.TextListener() {
+            @Override
+            public void onText(CharSequence text) {
+                chunker.append(text);
+            }
+
+            @Override
+            public void onPageStart(int page) {
+                chunker.startPage(page);
+            }
+        });
+    }
+
+    /**
+     * Cached text without page information, for callers that want the whole text
+     */
+    public String get(byte[] key) {
+        StringBuilder text = new StringBuilder();
+        boolean hit = replay(key, new StreamingChunker.TextListener() {
+            @Override
+            public void onText(CharSequence chars) {
+                text.append(chars);
+            }
+
+            @Override
+            public void onPageStart(int page) {
+            }
+        });
+        return hit ? text.toString() : null;
+    }
+
+    private boolean replay(byte[] key, StreamingChunker.TextListener target) {
+        MappedHashIndex.Entry entry;
+        synchronized (lock) {
+            entry = index.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        boolean delivered = false;
+        try (DataInputStream in = new DataInputStream(new RecordInputStream(entry.offset(), entry.length()))) {
+            int pageCount = in.readInt();
+            long[] pageOffsets = new long[pageCount];
+            int[] pages = new int[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pageOffsets[i] = in.readLong();
+                pages[i] = in.readInt();
+            }
+
+            Reader reader = new InputStreamReader(new InflaterInputStream(in), StandardCharsets.UTF_8);
+            char[] buffer = new char[8192];
+            long position = 0;
+            int nextPage = 0;
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                delivered = true;
+                int from = 0;
+                // Page starts that fall inside this buffer split it
+                while (nextPage < pageCount && pageOffsets[nextPage] < position + read) {
+                    int at = (int) Math.max(0, pageOffsets[nextPage] - position);
+                    if (at > from) {
+                        target.onText(CharBuffer.wrap(buffer, from, at - from));
+                        from = at;
+                    }
+                    target.onPageStart(pages[nextPage++]);
+                }
+                if (read > from) {
+                    target.onText(CharBuffer.wrap(buffer, from, read - from));
+                }
+                position += read;
+            }
+            while (nextPage < pageCount) {
+                target.onPageStart(pages[nextPage++]);
+            }
+            hits.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            if (delivered) {
+                throw new RuntimeException("Extraction cache entry is corrupt: " + e.getMessage(), e);
+            }
+            log.warn("Could not read extraction cache entry: {}", e.getMessage());
+            misses.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Start recording extracted text for the key. Attach the recording to the chunker,
+     * then commit it after a successful extraction, and always close it.
+     */
+    public Recording record(byte[] key) throws IOException {
+        return new Recording(key);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("stored", stored.get());
+        stats.put("skippedFull", skippedFull.get());
+        if (enabled) {
+            synchronized (lock) {
+                stats.put("entries", index.getCount());
+                stats.put("dataBytes", dataSize);
+            }
+        }
+        return stats;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Text compressed to a temp file as it is extracted, appended to the data file on commit
+     */
+    public class Recording implements StreamingChunker.TextListener, AutoCloseable {
+
+        private final byte[] key;
+        private final Path temp;
+        private final Writer writer;
+        private final List<long[]> pageStarts = new ArrayList<>();
+        private long characters;
+        private boolean closed;
+
+        private Recording(byte[] key) throws IOException {
+            this.key = key;
+            this.temp = Files.createTempFile(Paths.get(directory), "record-", ".tmp");
+            OutputStream out = new DeflaterOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), new Deflater(Deflater.BEST_SPEED), 8192);
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void onText(CharSequence text) {
+            try {
+                writer.append(text);
+                characters += text.length();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to record extracted text", e);
+            }
+        }
+
+        @Override
+        public void onPageStart(int page) {
+            pageStarts.add(new long[]{characters, page});
+        }
+
+        /**
+         * Store the recorded text; failures are logged and leave the cache without the entry
+         */
+        public void commit() {
+            try {
+                store();
+            } catch (IOException e) {
+                log.warn("Failed to store extracted text in the cache: {}", e.getMessage());
+            }
+        }
+
+        private void store() throws IOException {
+            writer.close();
+            closed = true;
+            long compressed = Files.size(temp);
+            ByteBuffer header = ByteBuffer.allocate(4 + pageStarts.size() * 12);
+            header.putInt(pageStarts.size());
+            for (long[] pageStart : pageStarts) {
+                header.putLong(pageStart[0]);
+                header.putInt((int) pageStart[1]);
+            }
+            header.flip();
+            long length = header.remaining() + compressed;
+            if (length > Integer.MAX_VALUE) {
+                log.info("Extracted text too large to cache ({} bytes compressed)", compressed);
+                return;
+            }
+
+            synchronized (lock) {
+                if (dataSize + length > maxSizeMb * 1024 * 1024) {
+                    skippedFull.incrementAndGet();
+                    log.info("Extraction cache is full ({} MB), not caching", maxSizeMb);
+                    return;
+                }
+                long offset = dataSize;
+                long position = offset;
+                while (header.hasRemaining()) {
+                    position += data.write(header, position);
+                }
+                try (FileChannel source = FileChannel.open(temp, StandardOpenOption.READ)) {
+                    long copied = 0;
+                    while (copied < compressed) {
+                        copied += data.transferFrom(source, position + copied, compressed - copied);
+                    }
+                }
+                data.force(false);
+                // Only indexed once the record is on disk
+                index.put(key, offset, (int) length);
+                index.force();
+                dataSize = offset + length;
+            }
+            stored.incrementAndGet();
+            log.info("Cached {} extracted characters ({} KB compressed)", characters, length / 1024);
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (!closed) {
+                    writer.close();
+                }
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("Failed to remove extraction cache temp file {}: {}", temp, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads one record of the data file with positional reads, so readers never share a file position
+     */
+    private class RecordInputStream extends InputStream {
+
+        private long position;
+        private final long end;
+
+        RecordInputStream(long offset, int length) {
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == 1 ? one[0] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = data.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
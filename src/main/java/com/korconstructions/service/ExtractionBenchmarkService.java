@@ -0,0 +1,122 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.Document;
+import com.korconstructions.repository.DocumentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times text extraction over the uploaded documents, per media type: magic-byte detection
+ * plus a single parse, against the previous detection by a full parse with a new parser.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExtractionBenchmarkService {
+
+    private final DocumentRepository documentRepository;
+    private final DocumentTextExtractor textExtractor;
+
+    private static class TypeTimings {
+        int files;
+        long bytes;
+        long detectNanos;
+        long fullParseDetectNanos;
+        long extractNanos;
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("files", files);
+            map.put("bytes", bytes);
+            map.put("avgDetectMs", avgMs(detectNanos));
+            map.put("avgFullParseDetectMs", avgMs(fullParseDetectNanos));
+            map.put("avgExtractMs", avgMs(extractNanos));
+            double before = fullParseDetectNanos + extractNanos;
+            double after = detectNanos + extractNanos;
+            map.put("speedup", after > 0 ? Math.round(before / after * 100) / 100.0 : null);
+            return map;
+        }
+
+        private double avgMs(long nanos) {
+            return files > 0 ? Math.round(nanos / (double) files / 10_000) / 100.0 : 0;
+        }
+    }
+
+    /**
+     * @param perType maximum number of files measured for each media type
+     */
+    public Map<String, Object> benchmark(int perType) {
+        Map<String, TypeTimings> byType = new TreeMap<>();
+        for (Document document : documentRepository.findAll()) {
+            if (document.getFilePath() == null) {
+                continue;
+            }
+            File file = new File(document.getFilePath());
+            if (!file.isFile()) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            String mimeType = textExtractor.detectMimeType(file);
+            long detectNanos = System.nanoTime() - start;
+
+            TypeTimings timings = byType.computeIfAbsent(mimeType, type -> new TypeTimings());
+            if (timings.files >= perType) {
+                continue;
+            }
+
+            start = System.nanoTime();
+            fullParseDetect(file);
+            long fullParseDetectNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            textExtractor.extractTextUncached(file);
+            long extractNanos = System.nanoTime() - start;
+
+            timings.files++;
+            timings.bytes += file.length();
+            timings.detectNanos += detectNanos;
+            timings.fullParseDetectNanos += fullParseDetectNanos;
+            timings.extractNanos += extractNanos;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        TypeTimings total = new TypeTimings();
+        Map<String, Object> types = new LinkedHashMap<>();
+        byType.forEach((type, timings) -> {
+            types.put(type, timings.toMap());
+            total.files += timings.files;
+            total.bytes += timings.bytes;
+            total.detectNanos += timings.detectNanos;
+            total.fullParseDetectNanos += timings.fullParseDetectNanos;
+            total.extractNanos += timings.extractNanos;
+        });
+        report.put("types", types);
+        report.put("total", total.toMap());
+        log.info("Extraction benchmark: {}", report);
+        return report;
+    }
+
+    /**
+     * How the media type used to be detected: a complete parse by a newly built parser
+     */
+    private void fullParseDetect(File file) {
+        try (InputStream stream = new FileInputStream(file)) {
+            Metadata metadata = new Metadata();
+            new AutoDetectParser().parse(stream, new BodyContentHandler(-1), metadata);
+        } catch (Exception e) {
+            log.debug("Full-parse detection failed for {}: {}", file.getName(), e.getMessage());
+        }
+    }
+}
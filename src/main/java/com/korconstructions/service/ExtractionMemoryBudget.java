@@ -0,0 +1,193 @@
+package com.korconstructions.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps PDF extraction within a share of the heap. Each loaded copy of a PDF keeps at most
+ * max-main-memory-mb of the file in memory and spills the rest to temp files; on top of that
+ * the parsed objects take roughly object-overhead-ratio x the file size. Extractions reserve
+ * their projected need from a fixed budget before loading, wait while others hold it, and are
+ * rejected after wait-seconds rather than risking an OutOfMemoryError. A reservation also
+ * covers the page images its PDF may have waiting for OCR, so pages never wait for memory that
+ * their own document holds.
+ */
+@Slf4j
+@Component
+public class ExtractionMemoryBudget {
+
+    private static final long MB = 1024 * 1024;
+
+    @Value("${app.documents.extraction.memory-budget-mb:0}")
+    private int budgetMb;
+
+    @Value("${app.documents.extraction.wait-seconds:300}")
+    private long waitSeconds;
+
+    @Value("${app.documents.pdf.max-main-memory-mb:16}")
+    private long maxMainMemoryMb;
+
+    @Value("${app.documents.pdf.object-overhead-ratio:0.25}")
+    private double objectOverheadRatio;
+
+    @Value("${app.documents.pdf.temp-directory:${java.io.tmpdir}}")
+    private String tempDirectory;
+
+    private Semaphore budget;
+    private int totalMb;
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        // Default: 40% of the maximum heap, leaving the rest to the web tier and embedding batches
+        totalMb = budgetMb > 0 ? budgetMb : (int) Math.max(1, Runtime.getRuntime().maxMemory() * 2 / 5 / MB);
+        budget = new Semaphore(totalMb, true);
+        log.info("PDF extraction memory budget: {} MB, {} MB in heap per loaded copy", totalMb, maxMainMemoryMb);
+    }
+
+    /**
+     * Load settings for PDDocument: at most max-main-memory-mb in heap, the rest in temp files
+     */
+    public MemoryUsageSetting memoryUsageSetting() {
+        MemoryUsageSetting setting = MemoryUsageSetting.setupMixed(maxMainMemoryMb * MB);
+        setting.setTempDir(new File(tempDirectory));
+        return setting;
+    }
+
+    /**
+     * Projected heap need of one loaded copy of a file, in MB, never more than the whole budget
+     * so that a file larger than the budget can still run on its own
+     */
+    public int projectedMb(long fileSize) {
+        double bytes = Math.min(fileSize, maxMainMemoryMb * MB) + fileSize * objectOverheadRatio;
+        return (int) Math.min(totalMb, Math.max(1, Math.ceil(bytes / MB)));
+    }
+
+    /**
+     * Reserve memory for one loaded copy of the file plus the page images it may have rendered
+     * at once, waiting for other extractions to release theirs. A copy is sized to leave room
+     * for the images even when the file alone would take the whole budget.
+     * @param imageBytes heap of the rendered pages that can wait for OCR at the same time, 0 without OCR
+     * @throws RuntimeException when the memory does not become available within wait-seconds
+     */
+    public Reservation reserve(File file, long imageBytes) {
+        int imageMb = (int) Math.min(totalMb - 1, (imageBytes + MB - 1) / MB);
+        int perCopyMb = Math.min(projectedMb(file.length()), totalMb - imageMb);
+        int needed = perCopyMb + imageMb;
+        try {
+            if (!acquire(budget, needed, waitSeconds, TimeUnit.SECONDS)) {
+                rejected.incrementAndGet();
+                throw new RuntimeException("Not enough memory to extract " + file.getName() + " (needs about "
+                    + needed + " MB, " + budget.availablePermits() + " of " + totalMb
+                    + " MB free after waiting " + waitSeconds + " s)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for extraction memory", e);
+        }
+        return new Reservation(perCopyMb, needed);
+    }
+
+    /**
+     * Semaphore wait that may run on a ForkJoinPool worker: the pool is told the worker blocks,
+     * so it can start a spare thread instead of losing the worker's share of the parallelism.
+     * On other threads it is a plain timed acquire.
+     * @return false when the permits did not become available within the timeout
+     */
+    static boolean acquire(Semaphore semaphore, int permits, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        PermitWait wait = new PermitWait(semaphore, permits, unit.toNanos(timeout));
+        ForkJoinPool.managedBlock(wait);
+        return wait.acquired;
+    }
+
+    private static class PermitWait implements ForkJoinPool.ManagedBlocker {
+
+        private final Semaphore semaphore;
+        private final int permits;
+        private final long timeoutNanos;
+        private boolean acquired;
+
+        PermitWait(Semaphore semaphore, int permits, long timeoutNanos) {
+            this.semaphore = semaphore;
+            this.permits = permits;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!acquired) {
+                acquired = semaphore.tryAcquire(permits, timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            // The timed form with no wait keeps the semaphore's fairness, unlike tryAcquire(permits)
+            if (!acquired) {
+                try {
+                    acquired = semaphore.tryAcquire(permits, 0, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // block() sees the flag and throws
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return acquired;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("budgetMb", totalMb);
+        stats.put("availableMb", budget.availablePermits());
+        stats.put("waiting", budget.getQueueLength());
+        stats.put("rejected", rejected.get());
+        stats.put("maxMainMemoryMbPerCopy", maxMainMemoryMb);
+        return stats;
+    }
+
+    /**
+     * Memory held by one extraction; released on close
+     */
+    public class Reservation implements AutoCloseable {
+
+        private final int perCopyMb;
+        private int heldMb;
+
+        private Reservation(int perCopyMb, int heldMb) {
+            this.perCopyMb = perCopyMb;
+            this.heldMb = heldMb;
+        }
+
+        /**
+         * Try to reserve memory for more loaded copies without waiting, e.g. for parallel workers
+         * @return how many of the requested copies fit in the budget right now
+         */
+        public int tryAddCopies(int copies) {
+            int added = 0;
+            while (added < copies && budget.tryAcquire(perCopyMb)) {
+                heldMb += perCopyMb;
+                added++;
+            }
+            return added;
+        }
+
+        @Override
+        public void close() {
+            budget.release(heldMb);
+            heldMb = 0;
+        }
+    }
+}
@@ -3,9 +3,15 @@ package com.korconstructions.service;
 import com.korconstructions.model.Floor;
 import com.korconstructions.repository.FloorRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -13,11 +19,19 @@ import java.util.Optional;
 @Service
 public class FloorService {
 
+    // Web path under which WebConfig serves the floor upload directory
+    private static final String IMAGE_URL_PREFIX = "/uploads/floors/";
+
     private final FloorRepository floorRepository;
+    private final ContentAddressedStorage storage;
+
+    @Value("${app.upload.floor-dir:./uploads/floors}")
+    private String uploadDir;
 
     @Autowired
-    public FloorService(FloorRepository floorRepository) {
+    public FloorService(FloorRepository floorRepository, ContentAddressedStorage storage) {
         this.floorRepository = floorRepository;
+        this.storage = storage;
     }
 
     public List<Floor> getAllFloors() {
@@ -60,9 +74,49 @@ public class FloorService {
 
     @Transactional
     public void deleteFloor(Long id) {
-        if (!floorRepository.existsById(id)) {
-            throw new RuntimeException("Floor not found with id: " + id);
-        }
+        Floor floor = floorRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Floor not found with id: " + id));
         floorRepository.deleteById(id);
+        releaseImage(floor.getImagePath());
+    }
+
+    /**
+     * Store a floor image under its content hash and point the floor at it.
+     * The same image uploaded for several floors is kept once; the previous image
+     * is deleted when no floor uses it any more.
+     */
+    @Transactional
+    public Floor updateFloorImage(Long id, MultipartFile file) throws IOException {
+        Floor floor = floorRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Floor not found with id: " + id));
+
+        Path root = Paths.get(uploadDir);
+        ContentAddressedStorage.StoredFile stored;
+        try (InputStream in = file.getInputStream()) {
+            stored = storage.store(in, root);
+        }
+
+        String previousImage = floor.getImagePath();
+        Floor saved;
+        try {
+            // Use web-accessible path
+            floor.setImagePath(IMAGE_URL_PREFIX + root.relativize(stored.path()).toString().replace('\\', '/'));
+            floor.setUpdatedAt(LocalDateTime.now());
+            saved = floorRepository.save(floor);
+        } finally {
+            storage.settle(stored);
+        }
+        if (previousImage != null && !previousImage.equals(saved.getImagePath())) {
+            releaseImage(previousImage);
+        }
+        return saved;
+    }
+
+    private void releaseImage(String imagePath) {
+        if (imagePath == null || !imagePath.startsWith(IMAGE_URL_PREFIX)) {
+            return;
+        }
+        Path file = Paths.get(uploadDir).resolve(imagePath.substring(IMAGE_URL_PREFIX.length()));
+        storage.release(file, () -> floorRepository.countByImagePath(imagePath));
     }
 }
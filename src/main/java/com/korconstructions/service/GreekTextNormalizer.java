@@ -0,0 +1,51 @@
+package com.korconstructions.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Accent- and case-insensitive tokenization for Greek (and Latin) text,
+ * so "Άδεια", "ΑΔΕΙΑ" and "αδεια" all produce the same term.
+ */
+public final class GreekTextNormalizer {
+
+    private static final Locale GREEK = Locale.forLanguageTag("el");
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Common words that carry no meaning for search (already normalized)
+    private static final Set<String> STOP_WORDS = Set.of(
+        "μπορεις", "πεις", "λεει", "για", "τις", "τους", "την", "του", "της", "των", "στην", "στο", "στον",
+        "στα", "στη", "και", "ειναι", "θα", "με", "απο", "που", "αυτο", "αυτη", "αυτος", "ποια", "ποιο",
+        "ποιος", "ποιες", "ποσο", "ποτε", "πως", "τι", "να", "το", "τα", "η", "ο", "οι", "σε", "ενα", "μια",
+        "the", "and", "for", "of", "to", "in", "is", "a");
+
+    private GreekTextNormalizer() {
+    }
+
+    /**
+     * Lower-case, strip accents and diaeresis, fold final sigma
+     */
+    public static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return stripped.toLowerCase(GREEK).replace('ς', 'σ');
+    }
+
+    /**
+     * Normalized terms of at least two characters, without stop words
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(normalize(text))) {
+            if (token.length() >= 2 && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
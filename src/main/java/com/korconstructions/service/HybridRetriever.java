@@ -0,0 +1,193 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.DocumentType;
+import com.korconstructions.repository.VectorChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs vector and BM25 retrieval concurrently and merges the two rankings with
+ * reciprocal rank fusion, so question latency is the slower of the two instead of their sum.
+ */
+@Slf4j
+@Service
+public class HybridRetriever {
+
+    // Standard RRF constant; dampens the advantage of the very top ranks
+    private static final int RRF_K = 60;
+
+    private final VectorStore vectorStore;
+    private final LexicalIndex lexicalIndex;
+    private final VectorChunkRepository chunkRepository;
+    private final ThreadPoolTaskExecutor retrievalExecutor;
+    private final ObjectProvider<VectorQuantizationService> quantizationService;
+    private final ObjectProvider<VectorIndexMaintenanceService> indexMaintenanceService;
+
+    @Value("${app.rag.retrieval.candidates:20}")
+    private int candidates;
+
+    @Value("${app.rag.retrieval.similarity-threshold:0.4}")
+    private double similarityThreshold;
+
+    @Autowired
+    public HybridRetriever(VectorStore vectorStore,
+                           LexicalIndex lexicalIndex,
+                           VectorChunkRepository chunkRepository,
+                           @Qualifier("retrievalExecutor") ThreadPoolTaskExecutor retrievalExecutor,
+                           ObjectProvider<VectorQuantizationService> quantizationService,
+                           ObjectProvider<VectorIndexMaintenanceService> indexMaintenanceService) {
+        this.vectorStore = vectorStore;
+        this.lexicalIndex = lexicalIndex;
+        this.chunkRepository = chunkRepository;
+        this.retrievalExecutor = retrievalExecutor;
+        this.quantizationService = quantizationService;
+        this.indexMaintenanceService = indexMaintenanceService;
+    }
+
+    /**
+     * Fused top-K chunks for a question. Each returned chunk carries its fused score
+     * in the "rrf_score" metadata key.
+     */
+    public List<org.springframework.ai.document.Document> retrieve(String question, Long buildingId,
+                                                                   DocumentType type, int topK) {
+        long start = System.currentTimeMillis();
+        Filter.Expression filter = buildFilter(buildingId, type);
+
+        SearchRequest searchRequest = SearchRequest.query(question)
+            .withTopK(candidates)
+            .withSimilarityThreshold(similarityThreshold);
+        if (filter != null) {
+            searchRequest = searchRequest.withFilterExpression(filter);
+        }
+        SearchRequest request = searchRequest;
+
+        // On pgvector a quantized index can replace the float32 index for the first pass
+        VectorQuantizationService quantization = quantizationService.getIfAvailable();
+        Supplier<List<org.springframework.ai.document.Document>> search =
+            quantization != null && quantization.isEnabled()
+                ? () -> quantization.search(question, candidates, buildingId,
+                    type != null ? type.toString() : null, similarityThreshold)
+                : () -> vectorSearch(request);
+        CompletableFuture<List<org.springframework.ai.document.Document>> vectorFuture;
+        try {
+            vectorFuture = CompletableFuture.supplyAsync(search, retrievalExecutor);
+        } catch (RejectedExecutionException e) {
+            // Retrieval pool saturated: search on this thread rather than failing the question
+            log.warn("Retrieval pool is full, running the vector search on the caller thread");
+            vectorFuture = runInline(search);
+        }
+
+        // BM25 is an in-memory lookup, run it on the caller thread while the vector search is in flight
+        List<LexicalIndex.Hit> lexicalHits = lexicalSearch(question, buildingId, type);
+
+        List<org.springframework.ai.document.Document> vectorHits;
+        try {
+            vectorHits = vectorFuture.join();
+        } catch (CompletionException e) {
+            log.error("Vector search failed, continuing with lexical results only", e.getCause());
+            vectorHits = List.of();
+        }
+        log.info("Retrieved {} vector and {} lexical candidates in {} ms (filter={})",
+            vectorHits.size(), lexicalHits.size(), System.currentTimeMillis() - start, filter);
+
+        return fuse(vectorHits, lexicalHits, topK);
+    }
+
+    private static <T> CompletableFuture<T> runInline(Supplier<T> task) {
+        try {
+            return CompletableFuture.completedFuture(task.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private List<org.springframework.ai.document.Document> vectorSearch(SearchRequest request) {
+        VectorIndexMaintenanceService indexMaintenance = indexMaintenanceService.getIfAvailable();
+        if (indexMaintenance == null) {
+            return vectorStore.similaritySearch(request);
+        }
+        return indexMaintenance.withProbes(request.getSimilarityThreshold(), () -> vectorStore.similaritySearch(request));
+    }
+
+    private List<LexicalIndex.Hit> lexicalSearch(String question, Long buildingId, DocumentType type) {
+        if (!lexicalIndex.isReady()) {
+            log.warn("Lexical index is still loading, using vector results only");
+            return List.of();
+        }
+        return lexicalIndex.search(question, candidates,
+            buildingId != null ? buildingId.toString() : null,
+            type != null ? type.toString() : null);
+    }
+
+    private List<org.springframework.ai.document.Document> fuse(List<org.springframework.ai.document.Document> vectorHits,
+                                                                List<LexicalIndex.Hit> lexicalHits, int topK) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, org.springframework.ai.document.Document> documents = new HashMap<>();
+
+        for (int rank = 0; rank < vectorHits.size(); rank++) {
+            org.springframework.ai.document.Document doc = vectorHits.get(rank);
+            scores.merge(doc.getId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            documents.put(doc.getId(), doc);
+        }
+        for (int rank = 0; rank < lexicalHits.size(); rank++) {
+            scores.merge(lexicalHits.get(rank).chunkId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+        }
+
+        List<String> ranked = scores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+            .limit(topK)
+            .map(Map.Entry::getKey)
+            .toList();
+
+        // Only lexical-only hits that made the cut need their text fetched
+        List<String> missing = ranked.stream().filter(id -> !documents.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            chunkRepository.findByIds(missing).forEach(doc -> documents.put(doc.getId(), doc));
+        }
+
+        List<org.springframework.ai.document.Document> results = new ArrayList<>(ranked.size());
+        for (String id : ranked) {
+            org.springframework.ai.document.Document doc = documents.get(id);
+            if (doc != null) {
+                doc.getMetadata().put("rrf_score", scores.get(id));
+                results.add(doc);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Metadata filter for the similarity query, or null when nothing is filtered
+     */
+    private Filter.Expression buildFilter(Long buildingId, DocumentType type) {
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op op = null;
+        if (buildingId != null) {
+            op = b.eq("building_id", buildingId.toString());
+        }
+        if (type != null) {
+            FilterExpressionBuilder.Op typeOp = b.eq("type", type.toString());
+            op = op == null ? typeOp : b.and(op, typeOp);
+        }
+        return op != null ? op.build() : null;
+    }
+}
@@ -0,0 +1,14 @@
+package com.korconstructions.service;
+
+import com.korconstructions.model.IndexStatus;
+
+/**
+ * Receives stage updates while a document is being indexed
+ */
+@FunctionalInterface
+public interface IndexingProgressListener {
+
+    IndexingProgressListener NONE = (status, completed, total, message) -> { };
+
+    void onProgress(IndexStatus status, int completed, int total, String message);
+}
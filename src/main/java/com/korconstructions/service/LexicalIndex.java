@@ -0,0 +1,445 @@
+package com.korconstructions.service;
+
+import com.korconstructions.repository.VectorChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process BM25 inverted index over chunk text. It replaces one embedding call plus
+ * one vector scan per keyword with a single in-memory lookup.
+ * Only term statistics are kept in memory; the chunk text stays in the vector table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final VectorChunkRepository chunkRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<Postings> postings = new ArrayList<>();
+
+    // Chunk ordinal -> entry, null once removed
+    private final List<ChunkEntry> chunks = new ArrayList<>();
+    private final Map<String, Integer> ordinalsByChunkId = new HashMap<>();
+    private final Map<Long, Set<Integer>> ordinalsByDocument = new HashMap<>();
+    // Writes made while rebuild() loads, replayed over the loaded chunks; null when not loading
+    private List<Runnable> writesWhileLoading;
+
+    private long totalLength;
+    private int liveChunks;
+    private int removedChunks;
+    private volatile boolean ready;
+
+    public record Hit(String chunkId, double score) {
+    }
+
+    /**
+     * Load the index from the vector table in the background after startup.
+     * Until it is ready, keyword search returns no results.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Thread loader = new Thread(this::rebuild, "lexical-index-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rebuild the whole index from the chunks stored in the vector table. Writes made meanwhile
+     * apply at once and are replayed after the load, so the load's older view of the table
+     * neither brings back removed chunks nor overwrites newer ones.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            clear();
+            int[] count = {0};
+            chunkRepository.forEachChunk((id, content, metadata) -> {
+                add(id, content, metadata, false);
+                count[0]++;
+            });
+            lock.writeLock().lock();
+            try {
+                writesWhileLoading.forEach(Runnable::run);
+                log.info("Lexical index loaded: {} chunks, {} terms, {} writes replayed in {} ms",
+                    count[0], termIds.size(), writesWhileLoading.size(), System.currentTimeMillis() - start);
+                writesWhileLoading = null;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (Exception e) {
+            log.warn("Could not load lexical index: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                writesWhileLoading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Add or replace a chunk
+     */
+    public void add(String chunkId, String text, Map<String, Object> metadata) {
+        add(chunkId, text, metadata, true);
+    }
+
+    private void add(String chunkId, String text, Map<String, Object> metadata, boolean live) {
+        List<String> tokens = GreekTextNormalizer.tokenize(text);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        tokens.forEach(t -> frequencies.merge(t, 1, Integer::sum));
+
+        lock.writeLock().lock();
+        try {
+            put(chunkId, tokens.size(), frequencies, metadata);
+            if (live) {
+                replayAfterLoad(() -> put(chunkId, tokens.size(), frequencies, metadata));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void put(String chunkId, int length, Map<String, Integer> frequencies, Map<String, Object> metadata) {
+        Integer existing = ordinalsByChunkId.get(chunkId);
+        if (existing != null) {
+            removeOrdinal(existing);
+        }
+
+        int ordinal = chunks.size();
+        int[] terms = new int[frequencies.size()];
+        int[] tfs = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            int termId = termIds.computeIfAbsent(entry.getKey(), k -> {
+                postings.add(new Postings());
+                return postings.size() - 1;
+            });
+            terms[i] = termId;
+            tfs[i] = entry.getValue();
+            postings.get(termId).add(ordinal, entry.getValue());
+            i++;
+        }
+
+        Long documentId = parseLong(metadata.get("document_id"));
+        chunks.add(new ChunkEntry(chunkId, documentId, stringValue(metadata.get("building_id")),
+            stringValue(metadata.get("type")), length, terms, tfs));
+        ordinalsByChunkId.put(chunkId, ordinal);
+        if (documentId != null) {
+            ordinalsByDocument.computeIfAbsent(documentId, id -> new LinkedHashSet<>()).add(ordinal);
+        }
+        totalLength += length;
+        liveChunks++;
+    }
+
+    public void removeChunks(Collection<String> chunkIds) {
+        List<String> ids = List.copyOf(chunkIds);
+        lock.writeLock().lock();
+        try {
+            removeChunkIds(ids);
+            replayAfterLoad(() -> removeChunkIds(ids));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeChunkIds(List<String> chunkIds) {
+        for (String chunkId : chunkIds) {
+            Integer ordinal = ordinalsByChunkId.get(chunkId);
+            if (ordinal != null) {
+                removeOrdinal(ordinal);
+            }
+        }
+        compactIfNeeded();
+    }
+
+    public void removeDocument(Long documentId) {
+        lock.writeLock().lock();
+        try {
+            removeDocumentOrdinals(documentId);
+            replayAfterLoad(() -> removeDocumentOrdinals(documentId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeDocumentOrdinals(Long documentId) {
+        Set<Integer> ordinals = ordinalsByDocument.remove(documentId);
+        if (ordinals != null) {
+            ordinals.forEach(this::removeOrdinal);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Keep the filterable metadata in step with metadata-only document updates
+     */
+    public void updateDocumentMetadata(Long documentId, String buildingId, String type) {
+        lock.writeLock().lock();
+        try {
+            setDocumentMetadata(documentId, buildingId, type);
+            replayAfterLoad(() -> setDocumentMetadata(documentId, buildingId, type));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setDocumentMetadata(Long documentId, String buildingId, String type) {
+        Set<Integer> ordinals = ordinalsByDocument.get(documentId);
+        if (ordinals == null) {
+            return;
+        }
+        for (int ordinal : ordinals) {
+            ChunkEntry entry = chunks.get(ordinal);
+            if (entry != null) {
+                entry.buildingId = buildingId;
+                entry.type = type;
+            }
+        }
+    }
+
+    /**
+     * Caller holds the write lock
+     */
+    private void replayAfterLoad(Runnable write) {
+        if (writesWhileLoading != null) {
+            writesWhileLoading.add(write);
+        }
+    }
+
+    /**
+     * BM25 search over the query terms, optionally restricted to a building and/or type
+     */
+    public List<Hit> search(String query, int topK, String buildingId, String type) {
+        List<String> terms = GreekTextNormalizer.tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveChunks == 0) {
+                return List.of();
+            }
+            double avgLength = (double) totalLength / liveChunks;
+            Map<Integer, Double> scores = new HashMap<>();
+
+            for (String term : new LinkedHashSet<>(terms)) {
+                Integer termId = termIds.get(term);
+                if (termId == null) {
+                    continue;
+                }
+                Postings list = postings.get(termId);
+                if (list.documentFrequency == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveChunks - list.documentFrequency + 0.5) / (list.documentFrequency + 0.5));
+
+                for (int i = 0; i < list.size; i++) {
+                    ChunkEntry entry = chunks.get(list.ordinals[i]);
+                    if (entry == null || !entry.matches(buildingId, type)) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    double norm = tf * (K1 + 1) / (tf + K1 * (1 - B + B * entry.length / avgLength));
+                    scores.merge(list.ordinals[i], idf * norm, Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<Integer, Double>> best =
+                new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+                best.offer(entry);
+                if (best.size() > topK) {
+                    best.poll();
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                Map.Entry<Integer, Double> entry = best.poll();
+                hits.add(new Hit(chunks.get(entry.getKey()).chunkId, entry.getValue()));
+            }
+            Collections.reverse(hits);
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            termIds.clear();
+            postings.clear();
+            chunks.clear();
+            ordinalsByChunkId.clear();
+            ordinalsByDocument.clear();
+            totalLength = 0;
+            liveChunks = 0;
+            removedChunks = 0;
+            ready = false;
+            writesWhileLoading = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Map<String, Object> getStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ready", ready);
+            stats.put("chunks", liveChunks);
+            stats.put("documents", ordinalsByDocument.size());
+            stats.put("terms", termIds.size());
+            stats.put("removedSinceCompaction", removedChunks);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeOrdinal(int ordinal) {
+        ChunkEntry entry = chunks.get(ordinal);
+        if (entry == null) {
+            return;
+        }
+        for (int termId : entry.terms) {
+            postings.get(termId).documentFrequency--;
+        }
+        chunks.set(ordinal, null);
+        ordinalsByChunkId.remove(entry.chunkId);
+        if (entry.documentId != null) {
+            Set<Integer> ordinals = ordinalsByDocument.get(entry.documentId);
+            if (ordinals != null) {
+                ordinals.remove(ordinal);
+                if (ordinals.isEmpty()) {
+                    ordinalsByDocument.remove(entry.documentId);
+                }
+            }
+        }
+        totalLength -= entry.length;
+        liveChunks--;
+        removedChunks++;
+    }
+
+    /**
+     * Removed chunks stay in the posting lists until more than half of the entries are dead,
+     * then the lists are rebuilt from the live chunks' term vectors
+     */
+    private void compactIfNeeded() {
+        if (removedChunks <= liveChunks) {
+            return;
+        }
+
+        List<ChunkEntry> live = chunks.stream().filter(Objects::nonNull).toList();
+        chunks.clear();
+        ordinalsByChunkId.clear();
+        ordinalsByDocument.clear();
+        postings.forEach(Postings::reset);
+
+        for (ChunkEntry entry : live) {
+            int ordinal = chunks.size();
+            chunks.add(entry);
+            ordinalsByChunkId.put(entry.chunkId, ordinal);
+            if (entry.documentId != null) {
+                ordinalsByDocument.computeIfAbsent(entry.documentId, id -> new LinkedHashSet<>()).add(ordinal);
+            }
+            for (int i = 0; i < entry.terms.length; i++) {
+                postings.get(entry.terms[i]).add(ordinal, entry.tfs[i]);
+            }
+        }
+        log.info("Compacted lexical index: {} live chunks, {} removed entries dropped", live.size(), removedChunks);
+        removedChunks = 0;
+    }
+
+    private static Long parseLong(Object value) {
+        return value != null ? Long.valueOf(value.toString()) : null;
+    }
+
+    private static String stringValue(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static class ChunkEntry {
+        final String chunkId;
+        final Long documentId;
+        volatile String buildingId;
+        volatile String type;
+        final int length;
+        final int[] terms;
+        final int[] tfs;
+
+        ChunkEntry(String chunkId, Long documentId, String buildingId, String type, int length, int[] terms, int[] tfs) {
+            this.chunkId = chunkId;
+            this.documentId = documentId;
+            this.buildingId = buildingId;
+            this.type = type;
+            this.length = length;
+            this.terms = terms;
+            this.tfs = tfs;
+        }
+
+        boolean matches(String buildingFilter, String typeFilter) {
+            return (buildingFilter == null || buildingFilter.equals(buildingId))
+                && (typeFilter == null || typeFilter.equals(type));
+        }
+    }
+
+    /**
+     * Growable parallel arrays of chunk ordinals and term frequencies
+     */
+    private static class Postings {
+        int[] ordinals = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+        int documentFrequency;
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+            documentFrequency++;
+        }
+
+        void reset() {
+            ordinals = new int[4];
+            frequencies = new int[4];
+            size = 0;
+            documentFrequency = 0;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.korconstructions.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Open-addressing hash table in a memory-mapped file, mapping 32-byte keys (SHA-256 digests)
+ * to a position and length in a data file. Linear probing; when the table is 70% full it is
+ * rebuilt, twice the size, into the next generation file (index.bin, index.bin.1, ...).
+ * A mapped file cannot be replaced or deleted on Windows while it is mapped, so the old
+ * generation is only deleted when the OS allows it, and otherwise on the next open.
+ * Entries are never removed. Not thread-safe; ExtractedTextCache guards it with its lock.
+ */
+class MappedHashIndex implements Closeable {
+
+    static final int KEY_BYTES = 32;
+
+    private static final int MAGIC = 0x4B584958; // "KXIX"
+    private static final int HEADER_BYTES = 16;
+    // key, data offset (8), record length (4), used flag (4)
+    private static final int SLOT_BYTES = KEY_BYTES + 16;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Path path;
+    private int generation;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private int capacity;
+    private int count;
+
+    record Entry(long offset, int length) {
+    }
+
+    MappedHashIndex(Path path, int initialCapacity) throws IOException {
+        this.path = path;
+        this.generation = latestGeneration();
+        Path current = generationPath(generation);
+        this.channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (channel.size() >= HEADER_BYTES) {
+            mapped = map(channel, channel.size());
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a hash index file: " + current);
+            }
+            capacity = mapped.getInt(4);
+            count = mapped.getInt(8);
+            if (channel.size() < bytesFor(capacity)) {
+                throw new IOException("Hash index file " + current + " is truncated");
+            }
+        } else {
+            capacity = initialCapacity;
+            mapped = map(channel, bytesFor(capacity));
+            writeHeader(mapped, capacity, 0);
+            mapped.putInt(0, MAGIC);
+        }
+        deleteOtherGenerations();
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    Entry get(byte[] key) {
+        int base = slotOffset(findSlot(mapped, capacity, key));
+        if (mapped.getInt(base + KEY_BYTES + 12) == 0) {
+            return null;
+        }
+        return new Entry(mapped.getLong(base + KEY_BYTES), mapped.getInt(base + KEY_BYTES + 8));
+    }
+
+    void put(byte[] key, long offset, int length) throws IOException {
+        if (count + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        int slot = findSlot(mapped, capacity, key);
+        int base = slotOffset(slot);
+        boolean isNew = mapped.getInt(base + KEY_BYTES + 12) == 0;
+        writeSlot(mapped, base, key, offset, length);
+        if (isNew) {
+            count++;
+            mapped.putInt(8, count);
+        }
+    }
+
+    void force() {
+        mapped.force();
+    }
+
+    /**
+     * Rehash every entry into a table twice the size in the next generation file and switch
+     * to it. The file is complete and flushed before its magic number is written, so a crash
+     * part way leaves a file the next open ignores.
+     */
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        int newGeneration = generation + 1;
+        Path newPath = generationPath(newGeneration);
+        FileChannel newChannel = FileChannel.open(newPath, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer newMapped;
+        try {
+            newMapped = map(newChannel, bytesFor(newCapacity));
+            writeHeader(newMapped, newCapacity, count);
+            byte[] key = new byte[KEY_BYTES];
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = slotOffset(slot);
+                if (mapped.getInt(base + KEY_BYTES + 12) == 0) {
+                    continue;
+                }
+                mapped.get(base, key);
+                int newSlot = findSlot(newMapped, newCapacity, key);
+                writeSlot(newMapped, slotOffset(newSlot), key, mapped.getLong(base + KEY_BYTES),
+                    mapped.getInt(base + KEY_BYTES + 8));
+            }
+            newMapped.force();
+            newMapped.putInt(0, MAGIC);
+            newMapped.force();
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            Files.deleteIfExists(newPath);
+            throw e;
+        }
+
+        Path oldPath = generationPath(generation);
+        mapped.force();
+        channel.close();
+        channel = newChannel;
+        mapped = newMapped;
+        capacity = newCapacity;
+        generation = newGeneration;
+        try {
+            Files.deleteIfExists(oldPath);
+        } catch (IOException e) {
+            // Still mapped (Windows); removed on the next open
+        }
+    }
+
+    /**
+     * Newest generation file that is complete, or 0 when there is none
+     */
+    private int latestGeneration() throws IOException {
+        int latest = 0;
+        for (int candidate : existingGenerations()) {
+            if (candidate > latest && isComplete(generationPath(candidate))) {
+                latest = candidate;
+            }
+        }
+        return latest;
+    }
+
+    private void deleteOtherGenerations() {
+        try {
+            for (int other : existingGenerations()) {
+                if (other != generation) {
+                    Files.deleteIfExists(generationPath(other));
+                }
+            }
+        } catch (IOException e) {
+            // Left for the next open
+        }
+    }
+
+    private List<Integer> existingGenerations() throws IOException {
+        String prefix = path.getFileName() + ".";
+        List<Integer> generations = new ArrayList<>();
+        if (Files.exists(path)) {
+            generations.add(0);
+        }
+        try (Stream<Path> files = Files.list(path.toAbsolutePath().getParent())) {
+            files.map(file -> file.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d{1,9}"))
+                .forEach(name -> generations.add(Integer.parseInt(name.substring(prefix.length()))));
+        }
+        return generations;
+    }
+
+    private static boolean isComplete(Path file) throws IOException {
+        try (FileChannel candidate = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (candidate.size() < HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (candidate.read(header, 0) < HEADER_BYTES) {
+                return false;
+            }
+            return header.getInt(0) == MAGIC && candidate.size() >= bytesFor(header.getInt(4));
+        }
+    }
+
+    private Path generationPath(int generation) {
+        return generation == 0 ? path : path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Slot holding the key, or the empty slot where it would go
+     */
+    private static int findSlot(MappedByteBuffer table, int capacity, byte[] key) {
+        // The key is a cryptographic digest, so its first bytes are already well distributed
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (key[i] & 0xFF);
+        }
+        int slot = (int) Long.remainderUnsigned(hash, capacity);
+        byte[] stored = new byte[KEY_BYTES];
+        while (true) {
+            int base = slotOffset(slot);
+            if (table.getInt(base + KEY_BYTES + 12) == 0) {
+                return slot;
+            }
+            table.get(base, stored);
+            if (Arrays.equals(stored, key)) {
+                return slot;
+            }
+            slot = (slot + 1) % capacity;
+        }
+    }
+
+    private static void writeSlot(MappedByteBuffer table, int base, byte[] key, long offset, int length) {
+        table.put(base, key);
+        table.putLong(base + KEY_BYTES, offset);
+        table.putInt(base + KEY_BYTES + 8, length);
+        // Written last, so a slot is never marked used with a half-written key
+        table.putInt(base + KEY_BYTES + 12, 1);
+    }
+
+    /**
+     * Capacity and count; the magic number is written by the caller once the table is complete
+     */
+    private static void writeHeader(MappedByteBuffer table, int capacity, int count) {
+        table.putInt(4, capacity);
+        table.putInt(8, count);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static long bytesFor(int capacity) {
+        return HEADER_BYTES + (long) capacity * SLOT_BYTES;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mapped != null) {
+            mapped.force();
+        }
+        channel.close();
+    }
+}
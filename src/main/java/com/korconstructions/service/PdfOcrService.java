@@ -0,0 +1,198 @@
+package com.korconstructions.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ocr.TesseractOCRParser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * OCR for PDF pages without a text layer (scanned permits and drawings). The page is rendered
+ * in grayscale at a bounded resolution on the thread that has the document open, and the image
+ * is passed to a local Tesseract through Tika's OCR parser on the OCR worker pool, so several
+ * pages are recognised at once. The memory of the images waiting for OCR is part of each PDF's
+ * extraction memory reservation ({@link #imageBytesInFlight()}). Disabled when the tesseract
+ * binary or none of the configured languages are installed.
+ */
+@Slf4j
+@Component
+public class PdfOcrService {
+
+    private final ThreadPoolTaskExecutor executor;
+
+    @Value("${app.documents.ocr.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.documents.ocr.language:ell+eng}")
+    private String language;
+
+    @Value("${app.documents.ocr.dpi:200}")
+    private int dpi;
+
+    @Value("${app.documents.ocr.max-pixels:12000000}")
+    private long maxPixels;
+
+    @Value("${app.documents.ocr.timeout-seconds:120}")
+    private int timeoutSeconds;
+
+    @Value("${app.documents.ocr.workers:2}")
+    private int workers;
+
+    private TesseractOCRParser parser;
+    private boolean available;
+    private Semaphore rendered;
+    private final AtomicLong pagesRecognised = new AtomicLong();
+    private final AtomicLong pagesFailed = new AtomicLong();
+
+    @Autowired
+    public PdfOcrService(@Qualifier("ocrExecutor") ThreadPoolTaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            parser = new TesseractOCRParser();
+            parser.setTimeout(timeoutSeconds);
+            // Asks tesseract for its installed languages while initialising
+            parser.setPreloadLangs(true);
+            parser.initialize(Collections.emptyMap());
+            if (!parser.hasTesseract()) {
+                log.info("Tesseract not found, scanned PDF pages will not be OCR'd");
+                return;
+            }
+            // Keep only the languages that are installed, in the configured order
+            String installed = Arrays.stream(language.split("\\+"))
+                .filter(parser.getLangs()::contains)
+                .collect(Collectors.joining("+"));
+            if (installed.isEmpty()) {
+                log.warn("None of the OCR languages {} are installed (found {}), OCR disabled",
+                    language, parser.getLangs());
+                return;
+            }
+            parser.setLanguage(installed);
+            rendered = new Semaphore(imagesInFlight());
+            available = true;
+            log.info("OCR of text-less PDF pages enabled: languages {}, {} dpi, {} workers", installed, dpi, workers);
+        } catch (Exception e) {
+            log.warn("Could not initialise Tesseract, OCR disabled: {}", e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Most heap the rendered pages of one PDF can take while they wait for OCR: all images in
+     * flight at their largest size, one byte per pixel in grayscale. 0 when OCR is off.
+     */
+    public long imageBytesInFlight() {
+        return available ? imagesInFlight() * maxPixels : 0;
+    }
+
+    private int imagesInFlight() {
+        return workers * 2;
+    }
+
+    /**
+     * Render the page now and recognise it on the OCR pool. Waits while twice as many pages
+     * as there are workers are rendered and not yet recognised, so images do not pile up;
+     * the wait tells a calling ForkJoinPool worker's pool that it blocks. The image's memory
+     * is covered by the caller's extraction reservation.
+     * The document must stay open only until this method returns.
+     * @param page 1-based page number
+     * @return the recognised text, or an empty string when recognition fails
+     */
+    public CompletableFuture<String> recognise(PDDocument document, int page) throws IOException {
+        try {
+            ExtractionMemoryBudget.acquire(rendered, 1, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to OCR page " + page, e);
+        }
+        BufferedImage image;
+        try {
+            image = new PDFRenderer(document).renderImage(page - 1, scale(document, page - 1), ImageType.GRAY);
+        } catch (IOException | RuntimeException e) {
+            rendered.release();
+            throw e;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return recognise(image, page);
+            } finally {
+                rendered.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Render scale for dpi; oversized sheets (e.g. A0 drawings) get a lower resolution
+     */
+    private float scale(PDDocument document, int pageIndex) {
+        float scale = dpi / 72f;
+        long pixels = pixels(document, pageIndex, scale);
+        if (pixels > maxPixels) {
+            scale *= (float) Math.sqrt((double) maxPixels / pixels);
+        }
+        return scale;
+    }
+
+    private static long pixels(PDDocument document, int pageIndex, float scale) {
+        PDRectangle box = document.getPage(pageIndex).getCropBox();
+        return (long) Math.ceil((double) box.getWidth() * scale * box.getHeight() * scale);
+    }
+
+    private String recognise(BufferedImage image, int page) {
+        long start = System.currentTimeMillis();
+        try {
+            BodyContentHandler handler = new BodyContentHandler(-1);
+            parser.parse(image, handler, new Metadata(), new ParseContext());
+            String text = handler.toString();
+            pagesRecognised.incrementAndGet();
+            log.info("OCR'd page {} in {} ms: {} characters", page, System.currentTimeMillis() - start, text.length());
+            return text;
+        } catch (Exception e) {
+            pagesFailed.incrementAndGet();
+            log.warn("OCR failed for page {}: {} - {}", page, e.getClass().getSimpleName(), e.getMessage());
+            return "";
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("available", available);
+        stats.put("language", available ? parser.getLanguage() : language);
+        stats.put("dpi", dpi);
+        stats.put("workers", workers);
+        stats.put("pagesRecognised", pagesRecognised.get());
+        stats.put("pagesFailed", pagesFailed.get());
+        return stats;
+    }
+}
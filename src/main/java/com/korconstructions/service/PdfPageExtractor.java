@@ -0,0 +1,252 @@
+package com.korconstructions.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Extracts PDF text page by page. Large PDFs are split into slices of consecutive pages that
+ * run on the shared fork-join pool, over several loaded copies of the document since PDDocument
+ * is not thread-safe. Pages are handed to the consumer in order as soon as the slices before
+ * them are done, so the chunker starts while later pages are still parsed. The text of each
+ * page is exactly what a single PDFTextStripper would produce for it.
+ * Every copy is loaded in mixed memory mode and counted against the extraction memory budget;
+ * when the budget has no room for extra copies the PDF is read sequentially.
+ * Pages without a text layer are rendered and OCR'd in the background; pages that have text
+ * are never OCR'd.
+ */
+@Slf4j
+@Component
+public class PdfPageExtractor {
+
+    @FunctionalInterface
+    public interface PageConsumer {
+        /**
+         * @param page 1-based page number
+         */
+        void accept(int page, String text);
+    }
+
+    private final ForkJoinPool pool;
+    private final ExtractionMemoryBudget memoryBudget;
+    private final PdfOcrService ocrService;
+
+    @Value("${app.documents.pdf.parallel:true}")
+    private boolean parallel;
+
+    @Value("${app.documents.pdf.min-parallel-pages:16}")
+    private int minParallelPages;
+
+    @Value("${app.documents.pdf.pages-per-task:8}")
+    private int pagesPerTask;
+
+    @Autowired
+    public PdfPageExtractor(@Qualifier("pdfExtractionPool") ForkJoinPool pool,
+                            ExtractionMemoryBudget memoryBudget,
+                            PdfOcrService ocrService) {
+        this.pool = pool;
+        this.memoryBudget = memoryBudget;
+        this.ocrService = ocrService;
+    }
+
+    /**
+     * Feed the text of every page of the PDF to the consumer, in page order, on the calling thread
+     * @return number of pages
+     */
+    public int extract(File file, PageConsumer consumer) throws IOException {
+        try (ExtractionMemoryBudget.Reservation reservation = memoryBudget.reserve(file, ocrService.imageBytesInFlight())) {
+            int pageCount;
+            int copies = 1;
+            try (PDDocument document = load(file)) {
+                pageCount = document.getNumberOfPages();
+                log.info("PDF loaded successfully, pages: {}", pageCount);
+                int slices = (pageCount + pagesPerTask - 1) / pagesPerTask;
+                if (parallel && pageCount >= minParallelPages && pool.getParallelism() > 1) {
+                    // This copy is closed before the workers start, so its share goes to one of them
+                    copies += reservation.tryAddCopies(Math.min(pool.getParallelism(), slices) - 1);
+                }
+                if (copies < 2) {
+                    extractSequential(document, pageCount, consumer);
+                    return pageCount;
+                }
+            }
+
+            long start = System.currentTimeMillis();
+            extractParallel(file, pageCount, copies, consumer);
+            log.info("Extracted {} pages over {} copies in {} ms", pageCount, copies,
+                System.currentTimeMillis() - start);
+            return pageCount;
+        }
+    }
+
+    private PDDocument load(File file) throws IOException {
+        return PDDocument.load(file, memoryBudget.memoryUsageSetting());
+    }
+
+    private void extractSequential(PDDocument document, int pageCount, PageConsumer consumer) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        // Pages waiting for OCR hold back the pages after them, which are delivered in order
+        Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+        int nextPage = 1;
+        for (int page = 1; page <= pageCount; page++) {
+            pending.add(pageText(stripper, document, page));
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                consumer.accept(nextPage++, pending.poll().join());
+            }
+        }
+        while (!pending.isEmpty()) {
+            consumer.accept(nextPage++, pending.poll().join());
+        }
+    }
+
+    private void extractParallel(File file, int pageCount, int copies, PageConsumer consumer) throws IOException {
+        DocumentCopies documents = new DocumentCopies(file, copies);
+        // Bounded so a slow consumer does not leave the whole document's text waiting in memory
+        int window = copies * 2;
+        Deque<ForkJoinTask<List<CompletableFuture<String>>>> inFlight = new ArrayDeque<>();
+        int nextPage = 1;
+        int nextSlice = 1;
+        try {
+            while (nextPage <= pageCount) {
+                while (nextSlice <= pageCount && inFlight.size() < window) {
+                    int from = nextSlice;
+                    int to = Math.min(pageCount, from + pagesPerTask - 1);
+                    inFlight.add(pool.submit(() -> stripSlice(documents, from, to)));
+                    nextSlice = to + 1;
+                }
+                for (CompletableFuture<String> text : inFlight.poll().join()) {
+                    consumer.accept(nextPage++, text.join());
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // Tasks are not cancelled: a cancelled ForkJoinTask counts as done at once, so joining
+            // it would not wait for a worker still using its copy, or for one about to load a copy
+            // that would then never be closed. Slices not yet started skip their pages instead,
+            // and every task is joined before the copies are closed.
+            documents.abandon();
+            inFlight.forEach(ForkJoinTask::quietlyJoin);
+            documents.close();
+        }
+    }
+
+    private List<CompletableFuture<String>> stripSlice(DocumentCopies documents, int from, int to) {
+        if (documents.isAbandoned()) {
+            return List.of();
+        }
+        try {
+            PDDocument document = documents.take();
+            try {
+                PDFTextStripper stripper = new PDFTextStripper();
+                List<CompletableFuture<String>> pages = new ArrayList<>(to - from + 1);
+                for (int page = from; page <= to && !documents.isAbandoned(); page++) {
+                    pages.add(pageText(stripper, document, page));
+                }
+                return pages;
+            } finally {
+                documents.release(document);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a PDF copy", e);
+        }
+    }
+
+    /**
+     * The page's text layer, or its OCR'd text when it has none
+     */
+    private CompletableFuture<String> pageText(PDFTextStripper stripper, PDDocument document, int page)
+            throws IOException {
+        String text = stripPage(stripper, document, page);
+        if (text.isBlank() && ocrService.isAvailable()) {
+            return ocrService.recognise(document, page);
+        }
+        return CompletableFuture.completedFuture(text);
+    }
+
+    private static String stripPage(PDFTextStripper stripper, PDDocument document, int page) throws IOException {
+        stripper.setStartPage(page);
+        stripper.setEndPage(page);
+        return stripper.getText(document);
+    }
+
+    /**
+     * Up to a fixed number of loaded copies of one PDF, each used by one slice at a time
+     */
+    private class DocumentCopies {
+
+        private final File file;
+        private final int maxCopies;
+        private final BlockingQueue<PDDocument> idle = new LinkedBlockingQueue<>();
+        private final List<PDDocument> loaded = new ArrayList<>();
+        private volatile boolean abandoned;
+
+        DocumentCopies(File file, int maxCopies) {
+            this.file = file;
+            this.maxCopies = maxCopies;
+        }
+
+        PDDocument take() throws IOException, InterruptedException {
+            PDDocument document = idle.poll();
+            if (document != null) {
+                return document;
+            }
+            synchronized (loaded) {
+                if (loaded.size() < maxCopies) {
+                    document = load(file);
+                    loaded.add(document);
+                    return document;
+                }
+            }
+            return idle.take();
+        }
+
+        void release(PDDocument document) {
+            idle.add(document);
+        }
+
+        /**
+         * Nobody reads the remaining pages any more, e.g. after a failure
+         */
+        void abandon() {
+            abandoned = true;
+        }
+
+        boolean isAbandoned() {
+            return abandoned;
+        }
+
+        void close() {
+            synchronized (loaded) {
+                for (PDDocument document : loaded) {
+                    try {
+                        document.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close PDF copy of {}: {}", file.getName(), e.getMessage());
+                    }
+                }
+                loaded.clear();
+            }
+        }
+    }
+}
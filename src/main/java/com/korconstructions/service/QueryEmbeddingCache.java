@@ -0,0 +1,89 @@
+package com.korconstructions.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory LRU of query embeddings keyed by normalized text. Vectors are kept as
+ * float[] (6 KB for 1536 dimensions), so max-entries bounds the memory used.
+ */
+@Slf4j
+@Component
+public class QueryEmbeddingCache {
+
+    @Value("${app.rag.query-embedding-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.rag.query-embedding-cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${app.rag.query-embedding-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry(float[] embedding, long createdAt) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return a copy of the cached vector, or null when absent or expired
+     */
+    public float[] get(String text) {
+        String key = EmbeddingCacheService.normalize(text);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.createdAt() >= System.currentTimeMillis() - ttlMinutes * 60_000L) {
+                hits.incrementAndGet();
+                return entry.embedding().clone();
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String text, float[] embedding) {
+        String key = EmbeddingCacheService.normalize(text);
+        synchronized (entries) {
+            entries.put(key, new Entry(embedding.clone(), System.currentTimeMillis()));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMinutes", ttlMinutes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0.0);
+        return stats;
+    }
+}
@@ -0,0 +1,216 @@
+package com.korconstructions.service;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Cuts text into overlapping chunks as it arrives, so a document never has to be
+ * held in memory as a whole. Only about one chunk of text is buffered at a time.
+ * Cuts prefer paragraph breaks, then sentence ends, then spaces, like splitIntoChunks.
+ * When the extractor reports page starts, each chunk is emitted with the pages it spans.
+ */
+public class StreamingChunker {
+
+    @FunctionalInterface
+    public interface ChunkSink {
+        /**
+         * @param firstPage page the chunk starts on, 1-based, or 0 when pages are unknown
+         * @param lastPage page the chunk ends on, or 0 when pages are unknown
+         */
+        void accept(String chunk, int firstPage, int lastPage);
+    }
+
+    /**
+     * Sees the raw text and page starts exactly as the extractor delivered them
+     */
+    public interface TextListener {
+        void onText(CharSequence text);
+
+        void onPageStart(int page);
+    }
+
+    private final int maxChunkSize;
+    private final int overlap;
+    private final int minChunkSize;
+    private final ChunkSink sink;
+    private final StringBuilder buffer = new StringBuilder();
+    // Document offset where each page starts; only pages still in the buffer are kept
+    private final TreeMap<Long, Integer> pageStarts = new TreeMap<>();
+    private final List<TextListener> listeners = new ArrayList<>();
+
+    // Characters in the buffer that were already part of the previous chunk
+    private int carriedOver;
+    // Document offset of the first character in the buffer
+    private long bufferOffset;
+    private long totalCharacters;
+    private int chunkCount;
+
+    public StreamingChunker(int maxChunkSize, int overlap, Consumer<String> sink) {
+        this(maxChunkSize, overlap, (chunk, firstPage, lastPage) -> sink.accept(chunk));
+    }
+
+    /**
+     * @throws IllegalArgumentException unless 0 <= overlap < maxChunkSize; a larger overlap
+     * would carry the whole chunk over and never make progress
+     */
+    public StreamingChunker(int maxChunkSize, int overlap, ChunkSink sink) {
+        if (overlap < 0 || overlap >= maxChunkSize) {
+            throw new IllegalArgumentException("Chunk overlap must be at least 0 and less than the chunk size "
+                + maxChunkSize + ", was " + overlap);
+        }
+        this.maxChunkSize = maxChunkSize;
+        this.overlap = overlap;
+        this.minChunkSize = Math.max(overlap + 1, maxChunkSize / 2);
+        this.sink = sink;
+    }
+
+    /**
+     * Mark that the text appended next belongs to the given page
+     */
+    public void startPage(int page) {
+        pageStarts.put(bufferOffset + buffer.length(), page);
+        for (TextListener listener : listeners) {
+            listener.onPageStart(page);
+        }
+    }
+
+    public void addListener(TextListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TextListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void append(char[] chars, int start, int length) {
+        buffer.append(chars, start, length);
+        totalCharacters += length;
+        if (!listeners.isEmpty()) {
+            CharBuffer text = CharBuffer.wrap(chars, start, length);
+            for (TextListener listener : listeners) {
+                listener.onText(text);
+            }
+        }
+        drain();
+    }
+
+    public void append(CharSequence text) {
+        buffer.append(text);
+        totalCharacters += text.length();
+        for (TextListener listener : listeners) {
+            listener.onText(text);
+        }
+        drain();
+    }
+
+    /**
+     * Emit whatever is left after the last full chunk
+     */
+    public void finish() {
+        // Skip a tail that only repeats the overlap of the previous chunk
+        String chunk = buffer.toString().trim();
+        if (!chunk.isEmpty() && (chunkCount == 0 || hasText(carriedOver))) {
+            emit(chunk, 0, buffer.length());
+        }
+        bufferOffset += buffer.length();
+        buffer.setLength(0);
+        carriedOver = 0;
+        pageStarts.clear();
+    }
+
+    /**
+     * True once any non-whitespace text has been seen
+     */
+    public boolean hasContent() {
+        return chunkCount > 0 || !buffer.toString().isBlank();
+    }
+
+    public long getTotalCharacters() {
+        return totalCharacters;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    private void drain() {
+        while (buffer.length() > maxChunkSize) {
+            int cut = findCut();
+            String chunk = buffer.substring(0, cut).trim();
+            if (!chunk.isEmpty()) {
+                emit(chunk, 0, cut);
+            }
+
+            // Keep the tail of this chunk as the start of the next one, from a word boundary
+            int keepFrom = Math.max(0, cut - overlap);
+            int space = buffer.indexOf(" ", keepFrom);
+            if (space >= 0 && space < cut) {
+                keepFrom = space + 1;
+            }
+            buffer.delete(0, keepFrom);
+            bufferOffset += keepFrom;
+            carriedOver = cut - keepFrom;
+            // The page the buffer now starts on is still needed, earlier ones are not
+            Long current = pageStarts.floorKey(bufferOffset);
+            if (current != null) {
+                pageStarts.headMap(current, false).clear();
+            }
+        }
+    }
+
+    private int findCut() {
+        int paragraph = buffer.lastIndexOf("\n\n", maxChunkSize - 2);
+        if (paragraph >= minChunkSize) {
+            return paragraph + 2;
+        }
+        int sentence = buffer.lastIndexOf(". ", maxChunkSize - 2);
+        if (sentence >= minChunkSize) {
+            return sentence + 2;
+        }
+        int line = buffer.lastIndexOf("\n", maxChunkSize - 1);
+        if (line >= minChunkSize) {
+            return line + 1;
+        }
+        int space = buffer.lastIndexOf(" ", maxChunkSize - 1);
+        if (space >= maxChunkSize - 100) {
+            return space + 1;
+        }
+        return maxChunkSize;
+    }
+
+    private boolean hasText(int from) {
+        for (int i = from; i < buffer.length(); i++) {
+            if (!Character.isWhitespace(buffer.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param start buffer position the chunk was cut from
+     * @param end buffer position the chunk was cut to, exclusive
+     */
+    private void emit(String chunk, int start, int end) {
+        chunkCount++;
+        // Pages of the first and last characters that survive the trim
+        int first = start;
+        while (first < end - 1 && Character.isWhitespace(buffer.charAt(first))) {
+            first++;
+        }
+        int last = end - 1;
+        while (last > first && Character.isWhitespace(buffer.charAt(last))) {
+            last--;
+        }
+        sink.accept(chunk, pageAt(bufferOffset + first), pageAt(bufferOffset + last));
+    }
+
+    private int pageAt(long offset) {
+        Map.Entry<Long, Integer> page = pageStarts.floorEntry(offset);
+        return page != null ? page.getValue() : 0;
+    }
+}
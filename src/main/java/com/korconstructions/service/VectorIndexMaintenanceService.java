@@ -0,0 +1,199 @@
+package com.korconstructions.service;
+
+import com.korconstructions.repository.IvfflatIndexRepository;
+import com.korconstructions.repository.IvfflatIndexRepository.IndexInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the IVFFLAT index in line with the size of the vector table. PgVectorStore creates the
+ * index once, usually on an empty table, with a fixed list count; this service rebuilds it with
+ * lists = sqrt(rows) when the count drifts too far, refreshes planner statistics, and picks
+ * ivfflat.probes for each query from its similarity threshold.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class VectorIndexMaintenanceService {
+
+    private final IvfflatIndexRepository indexRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    @Value("${app.rag.vector-index.min-rows:1000}")
+    private long minRows;
+
+    @Value("${app.rag.vector-index.drift-factor:2.0}")
+    private double driftFactor;
+
+    @Value("${app.rag.vector-index.probes-factor:2.0}")
+    private double probesFactor;
+
+    // Refreshed by every check, so per-query probes need no catalog lookup
+    private volatile IndexInfo index;
+    private volatile long rows = -1;
+    private volatile LocalDateTime lastCheck;
+    private volatile Map<String, Object> lastRebuild;
+
+    @Autowired
+    public VectorIndexMaintenanceService(IvfflatIndexRepository indexRepository,
+                                         PlatformTransactionManager transactionManager) {
+        this.indexRepository = indexRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexInfo() {
+        try {
+            index = indexRepository.findIndex();
+            log.info("IVFFLAT index: {}", index);
+        } catch (Exception e) {
+            log.warn("Could not read the IVFFLAT index definition: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.rag.vector-index.initial-delay-ms:600000}",
+               fixedDelayString = "${app.rag.vector-index.check-interval-ms:3600000}")
+    public void scheduledCheck() {
+        try {
+            check(false);
+        } catch (Exception e) {
+            log.warn("Vector index maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Count rows, refresh statistics when the table changed, and rebuild the index when its
+     * list count is more than drift-factor away from sqrt(rows)
+     * @param force rebuild even without drift
+     * @return true if the index was rebuilt
+     */
+    public boolean check(boolean force) {
+        long previousRows = rows;
+        rows = indexRepository.countRows();
+        index = indexRepository.findIndex();
+        lastCheck = LocalDateTime.now();
+
+        if (rows != previousRows) {
+            indexRepository.analyze();
+        }
+        if (index == null || (!force && !needsRebuild(index, rows))) {
+            return false;
+        }
+        return rebuild();
+    }
+
+    private boolean needsRebuild(IndexInfo info, long rowCount) {
+        if (rowCount < minRows) {
+            return false;
+        }
+        // No record of our own rebuild: PgVectorStore built it, most likely before any data existed
+        if (info.builtRows() == null) {
+            return true;
+        }
+        double ratio = (double) targetLists(rowCount) / info.lists();
+        return ratio > driftFactor || ratio < 1.0 / driftFactor;
+    }
+
+    private boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.info("IVFFLAT rebuild already in progress");
+            return false;
+        }
+        IndexInfo current = index;
+        long rowCount = rows;
+        int lists = targetLists(rowCount);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startedAt", LocalDateTime.now().toString());
+        result.put("rows", rowCount);
+        result.put("fromLists", current.lists());
+        result.put("toLists", lists);
+        try {
+            log.info("Rebuilding IVFFLAT index {} for {} rows: {} -> {} lists", current.name(), rowCount,
+                current.lists(), lists);
+            long start = System.currentTimeMillis();
+            indexRepository.rebuild(current.name(), lists, rowCount);
+            result.put("buildMs", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            indexRepository.analyze();
+            result.put("analyzeMs", System.currentTimeMillis() - start);
+
+            index = indexRepository.findIndex();
+            result.put("success", true);
+            log.info("IVFFLAT index rebuilt: {}", result);
+            return true;
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            log.error("IVFFLAT index rebuild failed", e);
+            return false;
+        } finally {
+            lastRebuild = result;
+            rebuilding.set(false);
+        }
+    }
+
+    private static int targetLists(long rowCount) {
+        return (int) Math.max(1, Math.round(Math.sqrt(rowCount)));
+    }
+
+    /**
+     * Lists to scan for a query. A low threshold accepts matches far from the query, which sit
+     * in more distant lists, so it gets more probes: sqrt(lists) * probes-factor * (1 - threshold).
+     */
+    public int probesFor(double similarityThreshold) {
+        IndexInfo info = index;
+        if (info == null) {
+            return 1;
+        }
+        double probes = Math.sqrt(info.lists()) * probesFactor * (1.0 - similarityThreshold);
+        return (int) Math.min(info.lists(), Math.max(1, Math.ceil(probes)));
+    }
+
+    /**
+     * Run a vector search with ivfflat.probes set for its similarity threshold. The setting is
+     * transaction-local, so the pooled connection goes back unchanged.
+     */
+    public <T> T withProbes(double similarityThreshold, Supplier<T> search) {
+        int probes = probesFor(similarityThreshold);
+        return transactionTemplate.execute(status -> {
+            indexRepository.setLocalProbes(probes);
+            return search.get();
+        });
+    }
+
+    public Map<String, Object> getStatus() {
+        IndexInfo info = index;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("rows", rows >= 0 ? rows : null);
+        status.put("index", info != null ? info.name() : null);
+        status.put("lists", info != null ? info.lists() : null);
+        status.put("builtForRows", info != null ? info.builtRows() : null);
+        status.put("targetLists", rows >= 0 ? targetLists(rows) : null);
+        status.put("rebuilding", rebuilding.get());
+        status.put("lastCheck", lastCheck != null ? lastCheck.toString() : null);
+        status.put("lastRebuild", lastRebuild);
+        Map<String, Integer> probes = new LinkedHashMap<>();
+        for (double threshold : new double[]{0.3, 0.4, 0.5, 0.7}) {
+            probes.put(String.valueOf(threshold), probesFor(threshold));
+        }
+        status.put("probesByThreshold", probes);
+        return status;
+    }
+}
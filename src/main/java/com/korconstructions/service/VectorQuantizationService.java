@@ -0,0 +1,183 @@
+package com.korconstructions.service;
+
+import com.korconstructions.repository.QuantizedVectorRepository;
+import com.korconstructions.repository.QuantizedVectorRepository.Mode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Optional quantized first pass for question retrieval on pgvector: a binary or half-precision
+ * HNSW index picks a shortlist of shortlist-factor x topK chunks, which are re-ranked by their
+ * full float32 embeddings. Also benchmarks recall and latency of each option on the stored corpus.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class VectorQuantizationService {
+
+    private final QuantizedVectorRepository quantizedRepository;
+    private final EmbeddingModel embeddingModel;
+    private final Mode mode;
+    private final int shortlistFactor;
+
+    private volatile boolean indexReady = false;
+
+    @Autowired
+    public VectorQuantizationService(QuantizedVectorRepository quantizedRepository,
+                                     EmbeddingModel embeddingModel,
+                                     @Value("${app.rag.quantization.mode:none}") String mode,
+                                     @Value("${app.rag.quantization.shortlist-factor:4}") int shortlistFactor) {
+        this.quantizedRepository = quantizedRepository;
+        this.embeddingModel = embeddingModel;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.shortlistFactor = Math.max(1, shortlistFactor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndex() {
+        if (mode == Mode.NONE) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            quantizedRepository.ensureIndex(mode);
+            indexReady = true;
+            log.info("Quantized vector index ({}) is in place after {} ms", mode, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // Older pgvector releases lack binary_quantize and halfvec
+            log.warn("Could not create the {} vector index, using the float32 index: {}", mode, e.getMessage());
+        }
+    }
+
+    /**
+     * True when questions should go through the quantized index instead of the vector store
+     */
+    public boolean isEnabled() {
+        return mode != Mode.NONE && indexReady;
+    }
+
+    /**
+     * Top-K chunks for a question by exact cosine similarity over a quantized shortlist,
+     * dropping those below the similarity threshold
+     */
+    public List<Document> search(String question, int topK, Long buildingId, String type,
+                                 double similarityThreshold) {
+        float[] embedding = embeddingModel.embed(question);
+        List<Document> results = quantizedRepository.search(mode, embedding, topK, shortlistFactor * topK,
+            buildingId != null ? buildingId.toString() : null, type);
+        return results.stream()
+            .filter(doc -> 1.0 - ((Number) doc.getMetadata().get("distance")).doubleValue() >= similarityThreshold)
+            .toList();
+    }
+
+    /**
+     * Compare first-pass options against brute force, using random stored chunks as queries.
+     * Recall is the share of the exact top-K (the query chunk itself excluded) that each option returns.
+     * Only quantized indexes that exist are measured.
+     */
+    public Map<String, Object> benchmark(int queries, int topK) {
+        Map<String, float[]> sample = quantizedRepository.sampleEmbeddings(queries);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode.name().toLowerCase(Locale.ROOT));
+        report.put("queries", sample.size());
+        report.put("topK", topK);
+        if (sample.isEmpty()) {
+            return report;
+        }
+
+        // Ground truth first; it also pulls the table into the buffer cache for the timed runs
+        Map<String, Set<String>> truth = new LinkedHashMap<>();
+        List<Long> exactNanos = new ArrayList<>();
+        sample.forEach((id, vector) -> {
+            long start = System.nanoTime();
+            List<Document> exact = quantizedRepository.exactSearch(vector, topK + 1);
+            exactNanos.add(System.nanoTime() - start);
+            truth.put(id, topIds(exact, id, topK));
+        });
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        Map<String, Object> exactResult = timing("exact", 0, exactNanos);
+        exactResult.put("recall", 1.0);
+        results.add(exactResult);
+        results.add(measure("ivfflat", 0, sample, truth, topK,
+            vector -> quantizedRepository.annSearch(vector, topK + 1, null, null)));
+        for (Mode option : List.of(Mode.BINARY, Mode.HALFVEC)) {
+            if (!quantizedRepository.hasIndex(option)) {
+                continue;
+            }
+            int[] factors = option == Mode.BINARY ? new int[]{2, 4, 8, 16} : new int[]{1, 2, 4};
+            for (int factor : factors) {
+                int shortlist = factor * (topK + 1);
+                results.add(measure(option.name().toLowerCase(Locale.ROOT), factor, sample, truth, topK,
+                    vector -> quantizedRepository.search(option, vector, topK + 1, shortlist, null, null)));
+            }
+        }
+        report.put("results", results);
+        report.put("sizesBytes", quantizedRepository.getSizes());
+        log.info("Vector quantization benchmark over {} queries: {}", sample.size(), results);
+        return report;
+    }
+
+    private Map<String, Object> measure(String name, int factor, Map<String, float[]> sample,
+                                        Map<String, Set<String>> truth, int topK,
+                                        Function<float[], List<Document>> search) {
+        double recall = 0;
+        List<Long> nanos = new ArrayList<>();
+        for (Map.Entry<String, float[]> query : sample.entrySet()) {
+            long start = System.nanoTime();
+            List<Document> found = search.apply(query.getValue());
+            nanos.add(System.nanoTime() - start);
+            recall += recall(truth.get(query.getKey()), topIds(found, query.getKey(), topK));
+        }
+        Map<String, Object> result = timing(name, factor, nanos);
+        result.put("recall", Math.round(recall / sample.size() * 1000) / 1000.0);
+        return result;
+    }
+
+    private static Map<String, Object> timing(String name, int factor, List<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("method", name);
+        if (factor > 0) {
+            result.put("shortlistFactor", factor);
+        }
+        result.put("avgMs", Math.round(Arrays.stream(sorted).average().orElse(0) / 10_000) / 100.0);
+        result.put("p95Ms", Math.round(sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.95) - 1)]
+            / 10_000) / 100.0);
+        return result;
+    }
+
+    private static Set<String> topIds(List<Document> results, String excludedId, int topK) {
+        Set<String> ids = new HashSet<>();
+        for (Document doc : results) {
+            if (!doc.getId().equals(excludedId) && ids.size() < topK) {
+                ids.add(doc.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static double recall(Set<String> expected, Set<String> found) {
+        if (expected.isEmpty()) {
+            return 1.0;
+        }
+        return found.stream().filter(expected::contains).count() / (double) expected.size();
+    }
+}
@@ -0,0 +1,71 @@
+package com.korconstructions.service;
+
+import com.korconstructions.repository.DocumentRepository;
+import com.korconstructions.repository.VectorChunkRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the vector table consistent with the documents table:
+ * removes chunks whose document no longer exists.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorStoreReconciliationService {
+
+    private final VectorChunkRepository chunkRepository;
+    private final DocumentRepository documentRepository;
+    private final LexicalIndex lexicalIndex;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        try {
+            chunkRepository.ensureMetadataIndexes();
+            log.info("Vector store metadata indexes are in place");
+        } catch (Exception e) {
+            log.warn("Could not create vector store metadata indexes: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.rag.reconciliation.initial-delay-ms:300000}",
+               fixedDelayString = "${app.rag.reconciliation.interval-ms:3600000}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.warn("Vector store reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delete the chunks of documents that no longer exist
+     * @return number of chunks removed
+     */
+    public int reconcile() {
+        List<Long> indexedIds = chunkRepository.findIndexedDocumentIds();
+        Set<Long> existingIds = new HashSet<>(documentRepository.findAllIds());
+
+        int removed = 0;
+        for (Long documentId : indexedIds) {
+            if (!existingIds.contains(documentId)) {
+                int deleted = chunkRepository.deleteByDocumentId(documentId);
+                lexicalIndex.removeDocument(documentId);
+                log.info("Removed {} orphaned chunks of deleted document {}", deleted, documentId);
+                removed += deleted;
+            }
+        }
+
+        log.info("Vector store reconciliation: {} indexed documents checked, {} orphaned chunks removed",
+            indexedIds.size(), removed);
+        return removed;
+    }
+}
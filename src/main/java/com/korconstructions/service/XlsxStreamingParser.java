@@ -0,0 +1,156 @@
+package com.korconstructions.service;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tika parser for XLSX built on POI's event API: each sheet's XML is read with SAX and every row
+ * is emitted as soon as it is parsed, so memory does not grow with the number of rows (Tika's own
+ * OOXML parser builds the whole workbook first). It replaces Tika's parser for XLSX inside the
+ * extraction parser, so workbooks are read in the isolated workers with their timeout and heap
+ * cap. The shared strings table and the styles are still held in memory; a workbook whose shared
+ * strings do not fit fails in its worker only.
+ * Output: the sheet name on its own line, then one line per non-empty row with the cells separated
+ * by tabs. Empty cells before the last non-empty one are kept as empty fields, so columns line up
+ * between rows.
+ */
+public class XlsxStreamingParser implements Parser {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Set<MediaType> SUPPORTED_TYPES = Set.of(
+        MediaType.application("vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+        MediaType.application("vnd.ms-excel.sheet.macroenabled.12"));
+
+    @Override
+    public Set<MediaType> getSupportedTypes(ParseContext context) {
+        return SUPPORTED_TYPES;
+    }
+
+    @Override
+    public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+            throws IOException, SAXException, TikaException {
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            TikaInputStream tis = TikaInputStream.get(stream, tmp, metadata);
+            XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+            xhtml.startDocument();
+            try (OPCPackage pkg = OPCPackage.open(tis.getFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+                StylesTable styles = reader.getStylesTable();
+                // Formats numbers and dates the way Excel displays them
+                DataFormatter formatter = new DataFormatter(Locale.getDefault());
+
+                RowEmitter rows = new RowEmitter(xhtml);
+                XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+                while (sheets.hasNext()) {
+                    try (InputStream sheet = sheets.next()) {
+                        xhtml.characters(sheets.getSheetName() + "\n");
+                        XMLReader parser = XMLHelper.newXMLReader();
+                        parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, rows, formatter, false));
+                        parser.parse(new InputSource(sheet));
+                        xhtml.characters("\n");
+                    }
+                }
+            } catch (RowWriteException e) {
+                throw e.getCause();
+            } catch (OpenXML4JException e) {
+                throw new TikaException("Could not read spreadsheet: " + e.getMessage(), e);
+            } catch (ParserConfigurationException e) {
+                throw new TikaException("No XML parser for the spreadsheet", e);
+            }
+            xhtml.endDocument();
+        }
+    }
+
+    /**
+     * Joins the cells of one row and writes the line when the row ends
+     */
+    private static class RowEmitter implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final XHTMLContentHandler xhtml;
+        private final StringBuilder row = new StringBuilder();
+        private int lastColumn;
+
+        RowEmitter(XHTMLContentHandler xhtml) {
+            this.xhtml = xhtml;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row.setLength(0);
+            lastColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (lastColumn < 0) {
+                return;
+            }
+            row.append('\n');
+            try {
+                xhtml.characters(row.toString());
+            } catch (SAXException e) {
+                throw new RowWriteException(e);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (formattedValue == null || formattedValue.isBlank()) {
+                return;
+            }
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : lastColumn + 1;
+            column = Math.max(column, lastColumn + 1);
+            // One tab per column since the last value: a separator plus one per empty cell between
+            int tabs = lastColumn < 0 ? column : column - lastColumn;
+            for (int i = 0; i < tabs; i++) {
+                row.append('\t');
+            }
+            row.append(formattedValue.strip());
+            lastColumn = column;
+        }
+    }
+
+    /**
+     * Carries a SAXException out of the POI callbacks, which cannot throw it
+     */
+    private static class RowWriteException extends RuntimeException {
+
+        RowWriteException(SAXException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SAXException getCause() {
+            return (SAXException) super.getCause();
+        }
+    }
+}
@@ -24,6 +24,16 @@ const documentTypeLabels = {
     'OTHER': 'Άλλο'
 };
 
+// Indexing status labels in Greek
+const indexStatusLabels = {
+    'PENDING': 'Σε αναμονή',
+    'EXTRACTING': 'Εξαγωγή κειμένου',
+    'CHUNKING': 'Τεμαχισμός',
+    'EMBEDDING': 'Δημιουργία embeddings',
+    'COMPLETED': 'Έτοιμο για ερωτήσεις',
+    'FAILED': 'Αποτυχία επεξεργασίας'
+};
+
 let allDocuments = [];
 let allBuildings = [];
 
@@ -117,6 +127,11 @@ function displayDocuments(documents) {
                     <div class="meta-item">
                         <strong>Ανέβηκε:</strong> ${formatDateTime(doc.uploadedAt)}
                     </div>
+                    ${doc.indexStatus ? `
+                        <div class="meta-item">
+                            <strong>AI:</strong> <span id="index-status-${doc.id}">${indexStatusLabels[doc.indexStatus]}</span>
+                        </div>
+                    ` : ''}
                 </div>
             </div>
         </div>
@@ -165,34 +180,40 @@ document.getElementById('document-form').addEventListener('submit', async (e) =>
         return;
     }
 
-    // Create FormData for file upload
-    const formData = new FormData();
-    formData.append('file', file);
-    formData.append('title', document.getElementById('document-title').value);
-    formData.append('description', document.getElementById('document-description').value || '');
-    formData.append('type', document.getElementById('document-type').value);
+    // The file goes as the raw request body, the other fields in the query string
+    const params = new URLSearchParams();
+    params.append('fileName', file.name);
+    params.append('title', document.getElementById('document-title').value);
+    params.append('description', document.getElementById('document-description').value || '');
+    params.append('type', document.getElementById('document-type').value);
 
     const buildingId = document.getElementById('document-building').value;
     if (buildingId) {
-        formData.append('buildingId', buildingId);
+        params.append('buildingId', buildingId);
     }
 
     try {
         // Show loading state
         const submitBtn = e.target.querySelector('button[type="submit"]');
         const originalText = submitBtn.textContent;
-        submitBtn.textContent = '⏳ Ανέβασμα και επεξεργασία με AI...';
+        submitBtn.textContent = '⏳ Ανέβασμα...';
         submitBtn.disabled = true;
 
-        const response = await fetch('/api/documents', {
+        const response = await fetch(`/api/documents/stream?${params}`, {
             method: 'POST',
-            body: formData
+            headers: { 'Content-Type': 'application/octet-stream' },
+            body: file
         });
 
         if (response.ok) {
+            const savedDocument = await response.json();
             closeDocumentModal();
             await loadDocuments();
-            alert('Το έγγραφο ανέβηκε και επεξεργάστηκε επιτυχώς!');
+            watchIndexStatus(savedDocument.id);
+        } else if (response.status === 503) {
+            alert('Η ουρά επεξεργασίας είναι γεμάτη. Δοκιμάστε ξανά σε λίγο.');
+        } else if (response.status === 413) {
+            alert('Το αρχείο είναι πολύ μεγάλο');
         } else {
             alert('Σφάλμα κατά το ανέβασμα του εγγράφου');
         }
@@ -205,6 +226,30 @@ document.getElementById('document-form').addEventListener('submit', async (e) =>
     }
 });
 
+// Follow background indexing progress of an uploaded document
+function watchIndexStatus(id) {
+    const source = new EventSource(`/api/documents/${id}/index-status/stream`);
+
+    source.addEventListener('progress', (event) => {
+        const progress = JSON.parse(event.data);
+        const label = document.getElementById(`index-status-${id}`);
+        if (label) {
+            let text = indexStatusLabels[progress.status];
+            if (progress.totalBatches) {
+                text += ` (${progress.completedBatches}/${progress.totalBatches})`;
+            }
+            label.textContent = text;
+        }
+
+        if (progress.status === 'COMPLETED' || progress.status === 'FAILED') {
+            source.close();
+            loadDocuments();
+        }
+    });
+
+    source.onerror = () => source.close();
+}
+
 // View document (opens in new tab for PDFs)
 function viewDocument(id) {
     window.open(`/api/documents/${id}/download?inline=true`, '_blank');
@@ -247,6 +292,7 @@ document.getElementById('ask-question-btn').addEventListener('click', async () =
     }
 
     const buildingId = document.getElementById('query-building').value || null;
+    const type = document.getElementById('query-type').value || null;
 
     const btn = document.getElementById('ask-question-btn');
     const originalText = btn.textContent;
@@ -254,23 +300,27 @@ document.getElementById('ask-question-btn').addEventListener('click', async () =
     btn.disabled = true;
 
     try {
-        const response = await fetch('/api/documents/ask', {
+        const response = await fetch('/api/documents/ask/stream', {
             method: 'POST',
             headers: {
-                'Content-Type': 'application/json'
+                'Content-Type': 'application/json',
+                'Accept': 'text/event-stream'
             },
             body: JSON.stringify({
                 question: question,
-                buildingId: buildingId
+                buildingId: buildingId,
+                type: type
             })
         });
 
-        if (response.ok) {
-            const data = await response.json();
-            displayAnswer(data.answer);
-        } else {
+        if (!response.ok || !response.body) {
             alert('Σφάλμα κατά την επεξεργασία της ερώτησης');
+            return;
         }
+
+        displayAnswer('');
+        displaySources([]);
+        await readAnswerStream(response.body);
     } catch (error) {
         console.error('Failed to ask question:', error);
         alert('Σφάλμα κατά την επεξεργασία της ερώτησης');
@@ -280,6 +330,69 @@ document.getElementById('ask-question-btn').addEventListener('click', async () =
     }
 });
 
+// Parse the Server-Sent Events of a streamed answer as they arrive
+async function readAnswerStream(body) {
+    const reader = body.getReader();
+    const decoder = new TextDecoder('utf-8');
+    let buffer = '';
+
+    while (true) {
+        const { value, done } = await reader.read();
+        if (done) break;
+        buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, '\n');
+
+        let boundary;
+        while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+            const rawEvent = buffer.slice(0, boundary);
+            buffer = buffer.slice(boundary + 2);
+            handleAnswerEvent(rawEvent);
+        }
+    }
+}
+
+function handleAnswerEvent(rawEvent) {
+    let name = 'message';
+    const dataLines = [];
+    rawEvent.split('\n').forEach(line => {
+        if (line.startsWith('event:')) {
+            name = line.slice(6).trim();
+        } else if (line.startsWith('data:')) {
+            dataLines.push(line.slice(5).replace(/^ /, ''));
+        }
+    });
+    if (dataLines.length === 0) return;
+
+    const data = JSON.parse(dataLines.join('\n'));
+    const answerContent = document.querySelector('#ai-answer .answer-content');
+
+    switch (name) {
+        case 'sources':
+            displaySources(data);
+            break;
+        case 'token':
+            answerContent.textContent += data.text;
+            break;
+        case 'error':
+            console.error('Answer stream failed:', data.message);
+            answerContent.textContent += '\n\nΣφάλμα κατά την επεξεργασία της ερώτησης';
+            break;
+    }
+}
+
+function displaySources(sources) {
+    const sourcesDiv = document.querySelector('#ai-answer .answer-sources');
+    const seen = new Set();
+    const titles = [];
+    sources.forEach(source => {
+        if (!seen.has(source.documentId)) {
+            seen.add(source.documentId);
+            titles.push(source.buildingName ? `${source.title} (${source.buildingName})` : source.title);
+        }
+    });
+
+    sourcesDiv.textContent = titles.length > 0 ? 'Πηγές: ' + titles.join(', ') : '';
+}
+
 function displayAnswer(answer) {
     const answerDiv = document.getElementById('ai-answer');
     const answerContent = answerDiv.querySelector('.answer-content');
@@ -0,0 +1,164 @@
+package com.korconstructions.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("HNSW graph")
+public class HnswGraphTest {
+
+    private static final int DIMENSIONS = 128;
+    private static final int VECTORS = 2000;
+    private static final int K = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should find most of the exact nearest neighbours")
+    public void testRecallAgainstBruteForce() throws Exception {
+        try (MappedVectorFile vectors = new MappedVectorFile(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            HnswGraph graph = build(vectors);
+            assertEquals(VECTORS, graph.size());
+
+            Random random = new Random(7);
+            int found = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                float[] query = normalize(clustered(random));
+                Set<Integer> exact = bruteForce(vectors, query);
+                List<HnswGraph.Scored> result = graph.search(query, K, 40, node -> true);
+
+                assertEquals(K, result.size());
+                for (int i = 1; i < result.size(); i++) {
+                    assertTrue(result.get(i - 1).similarity() >= result.get(i).similarity(), "best first");
+                }
+                for (HnswGraph.Scored scored : result) {
+                    assertEquals(vectors.dot(query, scored.node()), scored.similarity(), 1e-5f,
+                        "similarities are exact");
+                    if (exact.contains(scored.node())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = (double) found / (queries * K);
+            assertTrue(recall >= 0.95, "recall@" + K + " = " + recall);
+        }
+    }
+
+    @Test
+    @DisplayName("Should return only accepted nodes")
+    public void testFilter() throws Exception {
+        try (MappedVectorFile vectors = new MappedVectorFile(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            HnswGraph graph = build(vectors);
+            float[] query = normalize(clustered(new Random(3)));
+            List<HnswGraph.Scored> result = graph.search(query, K, 100, node -> node % 2 == 0);
+
+            assertEquals(K, result.size());
+            assertTrue(result.stream().allMatch(scored -> scored.node() % 2 == 0));
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer the same after a checkpoint round trip")
+    public void testCheckpointRoundTrip() throws Exception {
+        try (MappedVectorFile vectors = new MappedVectorFile(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            HnswGraph graph = build(vectors);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                graph.write(out);
+            }
+
+            HnswGraph loaded = new HnswGraph(vectors, 16, 100);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                loaded.read(in);
+            }
+            assertEquals(graph.size(), loaded.size());
+            assertTrue(loaded.contains(0) && loaded.contains(VECTORS - 1));
+
+            Random random = new Random(11);
+            for (int q = 0; q < 20; q++) {
+                float[] query = normalize(clustered(random));
+                assertEquals(graph.search(query, K, 64, node -> true), loaded.search(query, K, 64, node -> true));
+            }
+
+            // A loaded graph keeps accepting inserts
+            int slot = vectors.append(clustered(random));
+            loaded.insert(slot);
+            assertTrue(loaded.contains(slot));
+            assertEquals(slot, loaded.search(normalize(vectors.read(slot)), 1, 64, node -> true).get(0).node());
+        }
+    }
+
+    @Test
+    @DisplayName("Should refuse a checkpoint written with another M")
+    public void testCheckpointWithOtherM() throws Exception {
+        try (MappedVectorFile vectors = new MappedVectorFile(directory.resolve("vectors.bin"), DIMENSIONS)) {
+            HnswGraph graph = build(vectors);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                graph.write(out);
+            }
+            HnswGraph other = new HnswGraph(vectors, 8, 100);
+            assertThrows(IOException.class,
+                () -> other.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    private static HnswGraph build(MappedVectorFile vectors) throws IOException {
+        Random random = new Random(1);
+        HnswGraph graph = new HnswGraph(vectors, 16, 100);
+        for (int i = 0; i < VECTORS; i++) {
+            graph.insert(vectors.append(clustered(random)));
+        }
+        return graph;
+    }
+
+    private static Set<Integer> bruteForce(MappedVectorFile vectors, float[] query) {
+        Set<Integer> best = new HashSet<>();
+        IntStream.range(0, vectors.getCount()).boxed()
+            .sorted(Comparator.comparingDouble((Integer slot) -> vectors.dot(query, slot)).reversed())
+            .limit(K)
+            .forEach(best::add);
+        return best;
+    }
+
+    /**
+     * Vectors around a few centres, like embeddings of related text
+     */
+    private static float[] clustered(Random random) {
+        Random centres = new Random(random.nextInt(20));
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) (centres.nextGaussian() + 0.5 * random.nextGaussian());
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        float[] normalized = new float[vector.length];
+        for (int d = 0; d < vector.length; d++) {
+            normalized[d] = (float) (vector[d] / Math.sqrt(norm));
+        }
+        return normalized;
+    }
+}
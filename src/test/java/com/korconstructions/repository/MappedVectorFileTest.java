@@ -0,0 +1,79 @@
+package com.korconstructions.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Memory-mapped vector file")
+public class MappedVectorFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should store vectors normalized so the dot product is the cosine")
+    public void testNormalizesOnAppend() throws Exception {
+        try (MappedVectorFile vectors = new MappedVectorFile(directory.resolve("vectors.bin"), 4)) {
+            int a = vectors.append(new float[]{3, 4, 0, 0});
+            int b = vectors.append(new float[]{0, 2, 0, 0});
+
+            assertArrayEquals(new float[]{0.6f, 0.8f, 0, 0}, vectors.read(a), 1e-6f);
+            assertEquals(0.8f, vectors.dot(a, b), 1e-6f);
+            assertEquals(0.8f, vectors.dot(new float[]{0, 1, 0, 0}, a), 1e-6f);
+            assertEquals(1f, vectors.dot(a, a), 1e-6f);
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep every vector when growing past the initial capacity and after reopening")
+    public void testGrowAndReopen() throws Exception {
+        Path path = directory.resolve("vectors.bin");
+        int count = 2500;
+        try (MappedVectorFile vectors = new MappedVectorFile(path, 8)) {
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, vectors.append(vector(i)));
+            }
+            assertEquals(count, vectors.getCount());
+        }
+
+        try (MappedVectorFile reopened = new MappedVectorFile(path, 8)) {
+            assertEquals(count, reopened.getCount());
+            for (int i = 0; i < count; i += 97) {
+                float[] expected = vector(i);
+                float norm = 0;
+                for (float v : expected) {
+                    norm += v * v;
+                }
+                for (int d = 0; d < expected.length; d++) {
+                    expected[d] /= (float) Math.sqrt(norm);
+                }
+                assertArrayEquals(expected, reopened.read(i), 1e-6f, "slot " + i);
+            }
+            assertEquals(count, reopened.append(vector(count)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should refuse a file built with other dimensions and a vector of the wrong length")
+    public void testDimensionChecks() throws Exception {
+        Path path = directory.resolve("vectors.bin");
+        try (MappedVectorFile vectors = new MappedVectorFile(path, 8)) {
+            vectors.append(vector(1));
+            assertThrows(IllegalArgumentException.class, () -> vectors.append(new float[4]));
+        }
+        assertThrows(IOException.class, () -> new MappedVectorFile(path, 16));
+    }
+
+    private static float[] vector(int i) {
+        float[] vector = new float[8];
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] = (float) Math.sin(i * 0.37 + d) + 1.5f;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,199 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Content-addressed upload storage")
+public class ContentAddressedStorageTest {
+
+    @TempDir
+    Path directory;
+
+    private final ContentAddressedStorage storage = new ContentAddressedStorage(new NoOpTransactionManager());
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Should store identical uploads once under the hash of their contents")
+    public void testDeduplicates() throws Exception {
+        byte[] content = "Άδεια δόμησης".getBytes(StandardCharsets.UTF_8);
+        ContentAddressedStorage.StoredFile first = store(content);
+        ContentAddressedStorage.StoredFile second = store(content);
+
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        assertEquals(hash, first.hash());
+        assertEquals(directory.resolve(hash.substring(0, 2)).resolve(hash), first.path());
+        assertEquals(content.length, first.size());
+        assertFalse(first.duplicate());
+        assertTrue(second.duplicate());
+        assertEquals(first.path(), second.path());
+        assertArrayEquals(content, Files.readAllBytes(first.path()));
+        assertEquals(0, temporaryFiles(), "temp files are removed");
+    }
+
+    @Test
+    @DisplayName("Should fill the head buffer and reject content over the limit")
+    public void testHeadAndLimit() throws Exception {
+        byte[] content = new byte[200_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        ByteBuffer head = ByteBuffer.allocate(16);
+        ContentAddressedStorage.StoredFile stored = storage.store(
+            Channels.newChannel(new ByteArrayInputStream(content)), directory, content.length, head);
+        assertEquals(content.length, stored.size());
+        assertArrayEquals(Arrays.copyOf(content, 16), head.array());
+
+        assertThrows(MaxUploadSizeExceededException.class, () -> storage.store(
+            Channels.newChannel(new ByteArrayInputStream(content)), directory, content.length - 1, null));
+        assertEquals(0, temporaryFiles(), "a rejected upload leaves no temp file");
+    }
+
+    @Test
+    @DisplayName("Should delete a file outside a transaction only when nothing refers to it")
+    public void testReleaseOutsideTransaction() throws Exception {
+        ContentAddressedStorage.StoredFile stored = store("contract".getBytes());
+        storage.settle(stored);
+
+        storage.release(stored.path(), () -> 1);
+        assertTrue(Files.exists(stored.path()));
+        storage.release(stored.path(), () -> 0);
+        assertFalse(Files.exists(stored.path()));
+    }
+
+    @Test
+    @DisplayName("Should delete only after commit, counting the references again at that point")
+    public void testReleaseAfterCommit() throws Exception {
+        ContentAddressedStorage.StoredFile stored = store("invoice".getBytes());
+        storage.settle(stored);
+        AtomicLong references = new AtomicLong();
+
+        TransactionSynchronizationManager.initSynchronization();
+        storage.release(stored.path(), references::get);
+        assertTrue(Files.exists(stored.path()), "not deleted before commit");
+        // Another row with the same file was committed meanwhile
+        references.set(1);
+        commit();
+        assertTrue(Files.exists(stored.path()));
+
+        references.set(0);
+        TransactionSynchronizationManager.initSynchronization();
+        storage.release(stored.path(), references::get);
+        commit();
+        assertFalse(Files.exists(stored.path()));
+    }
+
+    @Test
+    @DisplayName("Should keep the file when the deleting transaction rolls back")
+    public void testRollbackKeepsFile() throws Exception {
+        ContentAddressedStorage.StoredFile stored = store("drawing".getBytes());
+        storage.settle(stored);
+
+        TransactionSynchronizationManager.initSynchronization();
+        storage.release(stored.path(), () -> 0);
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.clearSynchronization();
+        assertTrue(Files.exists(stored.path()));
+    }
+
+    @Test
+    @DisplayName("Should keep a file while an upload of the same contents is not saved yet")
+    public void testPinnedUntilSettled() throws Exception {
+        byte[] content = "permit".getBytes();
+        ContentAddressedStorage.StoredFile first = store(content);
+        storage.settle(first);
+        // A second upload of the same file, whose row is not inserted yet
+        ContentAddressedStorage.StoredFile second = store(content);
+        assertTrue(second.duplicate());
+
+        // The first document is deleted; its count does not see the uncommitted row
+        storage.release(first.path(), () -> 0);
+        assertTrue(Files.exists(first.path()), "the pending upload keeps the file");
+
+        storage.settle(second);
+        storage.release(first.path(), () -> 0);
+        assertFalse(Files.exists(first.path()));
+    }
+
+    @Test
+    @DisplayName("Should unpin a file settled inside a transaction when the transaction completes")
+    public void testSettleInTransaction() throws Exception {
+        ContentAddressedStorage.StoredFile stored = store("photo".getBytes());
+
+        TransactionSynchronizationManager.initSynchronization();
+        storage.settle(stored);
+        storage.release(stored.path(), () -> 0);
+        commit();
+        assertTrue(Files.exists(stored.path()), "still pinned when the delete ran inside the same transaction");
+
+        storage.release(stored.path(), () -> 0);
+        assertFalse(Files.exists(stored.path()));
+    }
+
+    private ContentAddressedStorage.StoredFile store(byte[] content) throws Exception {
+        return storage.store(new ByteArrayInputStream(content), directory);
+    }
+
+    /**
+     * Runs what a transaction manager runs after a successful commit
+     */
+    private static void commit() {
+        TransactionSynchronizationUtils.triggerAfterCommit();
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private long temporaryFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".tmp")).count();
+        }
+    }
+
+    /**
+     * The reference counts run in their own transaction; here they are plain calls
+     */
+    private static class NoOpTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
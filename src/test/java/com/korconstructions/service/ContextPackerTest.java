@@ -0,0 +1,115 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Context packer")
+public class ContextPackerTest {
+
+    private ContextPacker packer;
+
+    @BeforeEach
+    public void setUp() {
+        packer = new ContextPacker();
+        ReflectionTestUtils.setField(packer, "maxTokens", 3000);
+        ReflectionTestUtils.setField(packer, "charsPerToken", 2.5);
+        ReflectionTestUtils.setField(packer, "duplicateSimilarity", 0.85);
+    }
+
+    @Test
+    @DisplayName("Should merge overlapping neighbours of a document without repeating the overlap")
+    public void testMergeRemovesOverlap() {
+        String first = "Η σύμβαση αφορά την ανέγερση τετραώροφης οικοδομής στην οδό Ερμού 12 στην Αθήνα.";
+        String shared = "Ο εργολάβος αναλαμβάνει τον φέροντα οργανισμό.";
+        String second = " Η παράδοση ορίζεται για τον Μάρτιο του 2025.";
+        List<ContextPacker.Passage> packed = packer.pack(List.of(
+            chunk("c2", 7L, 1, shared + second, 0.5),
+            chunk("c1", 7L, 0, first + " " + shared, 0.9)));
+
+        assertEquals(1, packed.size());
+        assertEquals(first + " " + shared + second, packed.get(0).text());
+        assertEquals("7", packed.get(0).documentId());
+        assertEquals(0.9, packed.get(0).score(), 1e-9, "a merged passage keeps its best score");
+    }
+
+    @Test
+    @DisplayName("Should join adjacent chunks without overlap and keep distant ones apart")
+    public void testAdjacency() {
+        List<ContextPacker.Passage> packed = packer.pack(List.of(
+            chunk("a", 1L, 0, "Πρώτο τμήμα για θεμελίωση και εκσκαφές.", 0.3),
+            chunk("b", 1L, 1, "Δεύτερο τμήμα για σκυροδέτηση πλακών.", 0.2),
+            chunk("c", 1L, 5, "Έκτο τμήμα για ηλεκτρομηχανολογικά δίκτυα.", 0.8)));
+
+        assertEquals(2, packed.size());
+        assertEquals("Έκτο τμήμα για ηλεκτρομηχανολογικά δίκτυα.", packed.get(0).text());
+        assertEquals("Πρώτο τμήμα για θεμελίωση και εκσκαφές.\nΔεύτερο τμήμα για σκυροδέτηση πλακών.",
+            packed.get(1).text());
+    }
+
+    @Test
+    @DisplayName("Should drop a near-duplicate passage of another document")
+    public void testNearDuplicate() {
+        String text = "Η άδεια δόμησης 1234 εκδόθηκε από την πολεοδομία Χαλανδρίου για τετραώροφη οικοδομή.";
+        List<ContextPacker.Passage> packed = packer.pack(List.of(
+            chunk("a", 1L, 0, text, 0.9),
+            chunk("b", 2L, 0, text + " Αντίγραφο.", 0.8),
+            chunk("c", 3L, 0, "Το τιμολόγιο αφορά προμήθεια οπλισμού B500C.", 0.7)));
+
+        assertEquals(List.of("1", "3"), packed.stream().map(ContextPacker.Passage::documentId).toList());
+    }
+
+    @Test
+    @DisplayName("Should add passages by score until the token budget is spent")
+    public void testBudget() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 110);
+        List<ContextPacker.Passage> packed = packer.pack(List.of(
+            chunk("a", 1L, 0, words("αλφα", 30), 0.5),
+            chunk("b", 2L, 0, words("βητα", 30), 0.9),
+            chunk("c", 3L, 0, words("γαμα", 10), 0.1)));
+
+        // b (80 tokens) fits first, a (80) does not, c (24) still does
+        assertEquals(List.of("2", "3"), packed.stream().map(ContextPacker.Passage::documentId).toList());
+        int tokens = packed.stream().mapToInt(p -> packer.estimateTokens(p.text())).sum();
+        assertTrue(tokens <= 110, "over budget: " + tokens);
+    }
+
+    @Test
+    @DisplayName("Should truncate the best passage when it alone is over budget")
+    public void testOversizedBestPassage() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 20);
+        List<ContextPacker.Passage> packed = packer.pack(List.of(chunk("a", 1L, 0, words("λεξη", 40), 0.9)));
+
+        assertEquals(1, packed.size());
+        assertEquals(50, packed.get(0).text().length());
+        assertEquals(20, packer.estimateTokens(packed.get(0).text()));
+    }
+
+    private static Document chunk(String id, Long documentId, int chunkIndex, String text, double score) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId);
+        metadata.put("chunk_index", chunkIndex);
+        metadata.put("title", "Έγγραφο " + documentId);
+        metadata.put("rrf_score", score);
+        return new Document(id, text, metadata);
+    }
+
+    /**
+     * Distinct words so that passages are never near-duplicates of each other
+     */
+    private static String words(String stem, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(stem).append(i).append(' ');
+        }
+        return text.toString().trim();
+    }
+}
@@ -0,0 +1,137 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Embedding batch limiter and throttle detection")
+public class EmbeddingBatchIndexerTest {
+
+    @Test
+    @DisplayName("Should halve the limit on throttling, never below one")
+    public void testThrottleHalvesLimit() {
+        EmbeddingBatchIndexer.AdaptiveLimiter limiter = new EmbeddingBatchIndexer.AdaptiveLimiter(8);
+        assertEquals(8, limiter.currentLimit());
+        limiter.onThrottle();
+        assertEquals(4, limiter.currentLimit());
+        limiter.onThrottle();
+        limiter.onThrottle();
+        limiter.onThrottle();
+        assertEquals(1, limiter.currentLimit());
+    }
+
+    @Test
+    @DisplayName("Should grow back by about one per limit's worth of successes, up to the maximum")
+    public void testSuccessGrowsLimit() {
+        EmbeddingBatchIndexer.AdaptiveLimiter limiter = new EmbeddingBatchIndexer.AdaptiveLimiter(4);
+        limiter.onThrottle();
+        limiter.onThrottle();
+        assertEquals(1, limiter.currentLimit());
+
+        limiter.onSuccess();
+        assertEquals(2, limiter.currentLimit());
+        limiter.onSuccess();
+        assertEquals(2, limiter.currentLimit(), "1/limit per success: 2.5 after two");
+        limiter.onSuccess();
+        assertEquals(2, limiter.currentLimit());
+        limiter.onSuccess();
+        assertEquals(3, limiter.currentLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(4, limiter.currentLimit());
+    }
+
+    @Test
+    @DisplayName("Should block acquire while the limit is in flight until a permit is released")
+    public void testAcquireBlocksAtLimit() throws Exception {
+        EmbeddingBatchIndexer.AdaptiveLimiter limiter = new EmbeddingBatchIndexer.AdaptiveLimiter(2);
+        limiter.acquire();
+        limiter.acquire();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS), "third batch must wait");
+
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    @DisplayName("Should lower the number of batches in flight after throttling")
+    public void testThrottleLowersInFlight() throws Exception {
+        EmbeddingBatchIndexer.AdaptiveLimiter limiter = new EmbeddingBatchIndexer.AdaptiveLimiter(2);
+        limiter.acquire();
+        limiter.onThrottle();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS), "limit is now one");
+
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    @Test
+    @DisplayName("Should treat only 429 and 503 answers as throttled statuses")
+    public void testIsThrottled() {
+        assertTrue(EmbeddingBatchIndexer.isThrottled(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+        assertTrue(EmbeddingBatchIndexer.isThrottled(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertTrue(EmbeddingBatchIndexer.isThrottled(new TransientAiException("503 - {\"error\":\"overloaded\"}")));
+        assertTrue(EmbeddingBatchIndexer.isThrottled(
+            new RuntimeException("batch failed", new NonTransientAiException("429 - rate limit"))));
+
+        assertFalse(EmbeddingBatchIndexer.isThrottled(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR)));
+        assertFalse(EmbeddingBatchIndexer.isThrottled(new HttpClientErrorException(HttpStatus.UNAUTHORIZED)));
+        assertFalse(EmbeddingBatchIndexer.isThrottled(new NonTransientAiException("400 - bad input")));
+        assertFalse(EmbeddingBatchIndexer.isThrottled(new TransientAiException("timeout after 429 ms")));
+        assertFalse(EmbeddingBatchIndexer.isThrottled(
+            new ResourceAccessException("I/O error", new ConnectException("Connection refused"))));
+        assertFalse(EmbeddingBatchIndexer.isThrottled(
+            new ResourceAccessException("I/O error", new UnknownHostException("api.openai.com"))));
+    }
+
+    @Test
+    @DisplayName("Should treat read timeouts as throttling")
+    public void testTimeoutIsThrottled() {
+        assertTrue(EmbeddingBatchIndexer.isThrottled(
+            new ResourceAccessException("I/O error", new SocketTimeoutException("Read timed out"))));
+        assertTrue(EmbeddingBatchIndexer.isThrottled(
+            new ResourceAccessException("I/O error", new HttpTimeoutException("request timed out"))));
+        assertTrue(EmbeddingBatchIndexer.isThrottled(new RuntimeException("batch failed",
+            new ResourceAccessException("I/O error", new SocketTimeoutException("Read timed out")))));
+    }
+}
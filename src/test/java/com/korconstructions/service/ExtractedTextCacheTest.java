@@ -0,0 +1,201 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Extracted text cache")
+public class ExtractedTextCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private ExtractedTextCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        cache = open(2048);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    @DisplayName("Should replay the text and page starts exactly as they were recorded")
+    public void testReplayEqualsOriginal() throws Exception {
+        byte[] key = cache.keyFor(new byte[32], 1);
+        Events original = new Events();
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            feed(recording, original);
+            recording.commit();
+        }
+
+        Events replayed = new Events();
+        StreamingChunker chunker = new StreamingChunker(1000, 100, chunk -> { });
+        chunker.addListener(replayed);
+        assertTrue(cache.replay(key, chunker));
+        assertEquals(original.text.toString(), replayed.text.toString());
+        assertEquals(original.pages, replayed.pages);
+        assertEquals(original.text.toString(), cache.get(key));
+    }
+
+    @Test
+    @DisplayName("Should give the chunker the same chunks and pages as the live extraction")
+    public void testReplayedChunksMatch() throws Exception {
+        byte[] key = cache.keyFor(new byte[32], 1);
+        List<String> live = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(500, 50,
+            (chunk, firstPage, lastPage) -> live.add(firstPage + "-" + lastPage + ":" + chunk));
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            chunker.addListener(recording);
+            feed(chunker, new Events());
+            chunker.finish();
+            recording.commit();
+        }
+
+        List<String> replayed = new ArrayList<>();
+        StreamingChunker again = new StreamingChunker(500, 50,
+            (chunk, firstPage, lastPage) -> replayed.add(firstPage + "-" + lastPage + ":" + chunk));
+        assertTrue(cache.replay(key, again));
+        again.finish();
+        assertEquals(live, replayed);
+    }
+
+    @Test
+    @DisplayName("Should find entries again after reopening")
+    public void testReopen() throws Exception {
+        byte[] key = cache.keyFor(new byte[32], 1);
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            recording.onPageStart(1);
+            recording.onText("Άδεια δόμησης 1234/2023");
+            recording.commit();
+        }
+        cache.close();
+
+        cache = open(2048);
+        assertEquals("Άδεια δόμησης 1234/2023", cache.get(key));
+        assertEquals(1, cache.getStats().get("entries"));
+    }
+
+    @Test
+    @DisplayName("Should miss for other contents, another extractor version or an uncommitted recording")
+    public void testMisses() throws Exception {
+        byte[] contents = new byte[32];
+        byte[] key = cache.keyFor(contents, 1);
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            recording.onText("text");
+        }
+        assertNull(cache.get(key), "closed without commit");
+
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            recording.onText("text");
+            recording.commit();
+        }
+        assertEquals("text", cache.get(key));
+        assertNull(cache.get(cache.keyFor(contents, 2)));
+        contents[0] = 1;
+        assertNull(cache.get(cache.keyFor(contents, 1)));
+        try (var temps = Files.list(directory)) {
+            assertTrue(temps.noneMatch(path -> path.getFileName().toString().startsWith("record-")),
+                "recording temp files are removed");
+        }
+    }
+
+    @Test
+    @DisplayName("Should key a file by the hash of its contents")
+    public void testKeyForFile() throws Exception {
+        File a = Files.writeString(directory.resolve("a.txt"), "same").toFile();
+        File b = Files.writeString(directory.resolve("b.txt"), "same").toFile();
+        File c = Files.writeString(directory.resolve("c.txt"), "other").toFile();
+
+        assertArrayEquals(cache.keyFor(a, 1), cache.keyFor(b, 1));
+        assertArrayEquals(cache.keyFor(a, 1), cache.keyFor(ExtractedTextCache.sha256(a), 1));
+        assertFalse(Arrays.equals(cache.keyFor(a, 1), cache.keyFor(c, 1)));
+    }
+
+    @Test
+    @DisplayName("Should skip storing once the cache is full")
+    public void testFull() throws Exception {
+        cache.close();
+        cache = open(0);
+        byte[] key = cache.keyFor(new byte[32], 1);
+        try (ExtractedTextCache.Recording recording = cache.record(key)) {
+            recording.onText("text");
+            recording.commit();
+        }
+        assertNull(cache.get(key));
+        assertEquals(1L, cache.getStats().get("skippedFull"));
+    }
+
+    private ExtractedTextCache open(long maxSizeMb) {
+        ExtractedTextCache opened = new ExtractedTextCache();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", directory.toString());
+        ReflectionTestUtils.setField(opened, "maxSizeMb", maxSizeMb);
+        opened.open();
+        return opened;
+    }
+
+    /**
+     * Pages of uneven length, several of them longer than the replay buffer, with Greek text
+     * and a page that starts without any text before the next one
+     */
+    private static void feed(StreamingChunker.TextListener target, Events seen) {
+        for (int page = 1; page <= 12; page++) {
+            target.onPageStart(page);
+            seen.onPageStart(page);
+            if (page == 4) {
+                continue;
+            }
+            String text = ("Σελίδα " + page + ": η σκυροδέτηση του ορόφου ολοκληρώθηκε. ").repeat(page * 40) + "\n";
+            target.onText(text);
+            seen.onText(text);
+        }
+    }
+
+    private static void feed(StreamingChunker chunker, Events seen) {
+        feed(new StreamingChunker.TextListener() {
+            @Override
+            public void onText(CharSequence text) {
+                chunker.append(text);
+            }
+
+            @Override
+            public void onPageStart(int page) {
+                chunker.startPage(page);
+            }
+        }, seen);
+    }
+
+    /**
+     * The text and where each page starts in it
+     */
+    private static class Events implements StreamingChunker.TextListener {
+        final StringBuilder text = new StringBuilder();
+        final List<String> pages = new ArrayList<>();
+
+        @Override
+        public void onText(CharSequence chars) {
+            text.append(chars);
+        }
+
+        @Override
+        public void onPageStart(int page) {
+            pages.add(page + "@" + text.length());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Greek text normalizer")
+public class GreekTextNormalizerTest {
+
+    @Test
+    @DisplayName("Should fold accents, case and diaeresis to one form")
+    public void testAccentAndCaseFolding() {
+        assertEquals("αδεια", GreekTextNormalizer.normalize("Άδεια"));
+        assertEquals("αδεια", GreekTextNormalizer.normalize("ΑΔΕΙΑ"));
+        assertEquals("αδεια", GreekTextNormalizer.normalize("αδεια"));
+        assertEquals("προυπολογισμοσ", GreekTextNormalizer.normalize("Προϋπολογισμός"));
+        assertEquals("ευρω", GreekTextNormalizer.normalize("ΕΥΡΏ"));
+    }
+
+    @Test
+    @DisplayName("Should fold final sigma so inflected and capitalised words match")
+    public void testFinalSigma() {
+        assertEquals(GreekTextNormalizer.normalize("ΟΡΟΦΟΣ"), GreekTextNormalizer.normalize("όροφος"));
+        assertEquals("οροφοσ", GreekTextNormalizer.normalize("όροφος"));
+    }
+
+    @Test
+    @DisplayName("Should split on punctuation and drop stop words and single characters")
+    public void testTokenize() {
+        List<String> tokens = GreekTextNormalizer.tokenize("Ποια είναι η άδεια δόμησης του 2ου ορόφου; A/C, 25.000€");
+        assertEquals(List.of("αδεια", "δομησησ", "2ου", "οροφου", "25", "000"), tokens);
+    }
+
+    @Test
+    @DisplayName("Should tokenize Latin text case-insensitively")
+    public void testLatin() {
+        assertEquals(List.of("concrete", "c25", "30", "slab"),
+            GreekTextNormalizer.tokenize("The CONCRETE C25/30 for the slab"));
+    }
+
+    @Test
+    @DisplayName("Should return no tokens for blank or stop-word-only text")
+    public void testEmpty() {
+        assertTrue(GreekTextNormalizer.tokenize("").isEmpty());
+        assertTrue(GreekTextNormalizer.tokenize("  ;; ").isEmpty());
+        assertTrue(GreekTextNormalizer.tokenize("και για το").isEmpty());
+    }
+}
@@ -0,0 +1,181 @@
+package com.korconstructions.service;
+
+import com.korconstructions.repository.VectorChunkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("Lexical BM25 index")
+public class LexicalIndexTest {
+
+    private LexicalIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        // The repository is only used to rebuild from the vector table
+        index = new LexicalIndex(null);
+    }
+
+    @Test
+    @DisplayName("Should find chunks whatever the accents and case of the query")
+    public void testAccentInsensitiveSearch() {
+        index.add("c1", "Η ΆΔΕΙΑ ΔΌΜΗΣΗΣ εκδόθηκε το 2023", metadata(1L, "5", "PERMIT"));
+        index.add("c2", "Τιμολόγιο σκυροδέματος", metadata(2L, "5", "INVOICE"));
+
+        List<LexicalIndex.Hit> hits = index.search("αδεια δομησης", 10, null, null);
+        assertEquals(1, hits.size());
+        assertEquals("c1", hits.get(0).chunkId());
+    }
+
+    @Test
+    @DisplayName("Should score a single-term match with the BM25 formula")
+    public void testBm25Score() {
+        index.add("c1", "σκυρόδεμα σκυρόδεμα οπλισμός", metadata(1L, null, null));
+        index.add("c2", "οπλισμός καλούπια ξυλότυπος ικρίωμα", metadata(1L, null, null));
+        index.add("c3", "μπετόν", metadata(1L, null, null));
+
+        List<LexicalIndex.Hit> hits = index.search("σκυρόδεμα", 10, null, null);
+        assertEquals(1, hits.size());
+
+        // N = 3, df = 1, tf = 2, |d| = 3, avgdl = (3 + 4 + 1) / 3
+        double idf = Math.log(1 + (3 - 1 + 0.5) / (1 + 0.5));
+        double avgLength = 8.0 / 3;
+        double expected = idf * 2 * 2.2 / (2 + 1.2 * (1 - 0.75 + 0.75 * 3 / avgLength));
+        assertEquals(expected, hits.get(0).score(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Should rank rare terms, frequent terms and short chunks higher")
+    public void testRanking() {
+        index.add("common", "κτίριο κτίριο όροφος", metadata(1L, null, null));
+        index.add("rare", "κτίριο ανελκυστήρας", metadata(1L, null, null));
+        index.add("other", "κτίριο στέγη", metadata(1L, null, null));
+        // "ανελκυστήρας" appears in one chunk, "κτίριο" in all, so it decides the order
+        List<LexicalIndex.Hit> hits = index.search("κτίριο ανελκυστήρας", 10, null, null);
+        assertEquals("rare", hits.get(0).chunkId());
+        assertEquals(3, hits.size());
+
+        index.add("long", "σωλήνας " + "λέξη ".repeat(40), metadata(1L, null, null));
+        index.add("short", "σωλήνας ύδρευσης", metadata(1L, null, null));
+        index.add("twice", "σωλήνας σωλήνας ύδρευσης", metadata(1L, null, null));
+        List<String> order = index.search("σωλήνας", 10, null, null).stream().map(LexicalIndex.Hit::chunkId).toList();
+        assertEquals(List.of("twice", "short", "long"), order);
+    }
+
+    @Test
+    @DisplayName("Should return at most topK hits in descending score order")
+    public void testTopK() {
+        for (int i = 1; i <= 20; i++) {
+            index.add("c" + i, "πλακάκια " + "δάπεδο ".repeat(i), metadata(1L, null, null));
+        }
+        List<LexicalIndex.Hit> hits = index.search("δάπεδο", 5, null, null);
+        assertEquals(5, hits.size());
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+        }
+    }
+
+    @Test
+    @DisplayName("Should filter by building and type, following metadata updates")
+    public void testFilters() {
+        index.add("a", "θερμομόνωση ταράτσας", metadata(1L, "1", "CONTRACT"));
+        index.add("b", "θερμομόνωση προσόψεων", metadata(2L, "2", "CONTRACT"));
+        index.add("c", "θερμομόνωση υπογείου", metadata(3L, "2", "INVOICE"));
+
+        assertEquals(List.of("a"), ids(index.search("θερμομόνωση", 10, "1", null)));
+        assertEquals(List.of("c"), ids(index.search("θερμομόνωση", 10, "2", "INVOICE")));
+        assertEquals(2, index.search("θερμομόνωση", 10, null, "CONTRACT").size());
+
+        index.updateDocumentMetadata(1L, "2", "INVOICE");
+        assertTrue(index.search("θερμομόνωση", 10, "1", null).isEmpty());
+        assertEquals(2, index.search("θερμομόνωση", 10, "2", "INVOICE").size());
+    }
+
+    @Test
+    @DisplayName("Should forget removed chunks and documents, also after compaction")
+    public void testRemove() {
+        index.add("a1", "αποχέτευση", metadata(1L, null, null));
+        index.add("a2", "αποχέτευση ομβρίων", metadata(1L, null, null));
+        index.add("b1", "αποχέτευση ακαθάρτων", metadata(2L, null, null));
+
+        index.removeChunks(List.of("a2"));
+        assertEquals(List.of("a1", "b1"), ids(index.search("αποχέτευση", 10, null, null)).stream().sorted().toList());
+        assertTrue(index.search("ομβρίων", 10, null, null).isEmpty());
+
+        // Two of three entries are now removed, which triggers compaction
+        index.removeDocument(1L);
+        assertEquals(List.of("b1"), ids(index.search("αποχέτευση", 10, null, null)));
+        assertEquals(1, index.getStats().get("chunks"));
+        assertEquals(0, index.getStats().get("removedSinceCompaction"));
+
+        index.add("b2", "αποχέτευση", metadata(2L, null, null));
+        assertEquals(2, index.search("αποχέτευση", 10, null, null).size());
+    }
+
+    @Test
+    @DisplayName("Should keep writes made while the index rebuilds from an older view of the table")
+    public void testWritesDuringRebuild() {
+        VectorChunkRepository repository = mock(VectorChunkRepository.class);
+        LexicalIndex loading = new LexicalIndex(repository);
+        doAnswer(invocation -> {
+            VectorChunkRepository.ChunkConsumer consumer = invocation.getArgument(0);
+            consumer.accept("a1", "σωληνώσεις", metadata(1L, null, null));
+            // Indexing and deletes go on while the load still reads the old rows
+            loading.removeDocument(1L);
+            loading.add("c1", "σωληνώσεις θέρμανσης", metadata(3L, null, null));
+            consumer.accept("a2", "σωληνώσεις νερού", metadata(1L, null, null));
+            consumer.accept("b1", "σωληνώσεις αποχέτευσης", metadata(2L, null, null));
+            return null;
+        }).when(repository).forEachChunk(any());
+
+        loading.rebuild();
+
+        assertTrue(loading.isReady());
+        assertEquals(List.of("b1", "c1"), ids(loading.search("σωληνώσεις", 10, null, null)).stream().sorted().toList());
+        assertEquals(2, loading.getStats().get("documents"));
+
+        // Writes after the load are no longer recorded for replay
+        loading.removeDocument(2L);
+        assertEquals(List.of("c1"), ids(loading.search("σωληνώσεις", 10, null, null)));
+    }
+
+    @Test
+    @DisplayName("Should replace a chunk added again under the same id")
+    public void testReplace() {
+        index.add("c1", "ηλεκτρολογικά", metadata(1L, null, null));
+        index.add("c1", "υδραυλικά", metadata(1L, null, null));
+
+        assertTrue(index.search("ηλεκτρολογικά", 10, null, null).isEmpty());
+        assertEquals(List.of("c1"), ids(index.search("υδραυλικά", 10, null, null)));
+        assertEquals(1, index.getStats().get("chunks"));
+    }
+
+    @Test
+    @DisplayName("Should return nothing for an empty index or a stop-word-only query")
+    public void testEmpty() {
+        assertTrue(index.search("αδεια", 10, null, null).isEmpty());
+        index.add("c1", "άδεια", metadata(1L, null, null));
+        assertTrue(index.search("και για το", 10, null, null).isEmpty());
+    }
+
+    private static Map<String, Object> metadata(Long documentId, String buildingId, String type) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("document_id", documentId);
+        metadata.put("building_id", buildingId);
+        metadata.put("type", type);
+        return metadata;
+    }
+
+    private static List<String> ids(List<LexicalIndex.Hit> hits) {
+        return hits.stream().map(LexicalIndex.Hit::chunkId).toList();
+    }
+}
@@ -0,0 +1,99 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Memory-mapped hash index")
+public class MappedHashIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Should find every entry after growing several times")
+    public void testGrowKeepsEntries() throws Exception {
+        Path path = directory.resolve("index.bin");
+        try (MappedHashIndex index = new MappedHashIndex(path, 16)) {
+            for (int i = 0; i < 2000; i++) {
+                index.put(key(i), i * 100L, i);
+            }
+            assertEquals(2000, index.getCount());
+            assertTrue(index.getCapacity() >= 2000 / 0.7);
+            for (int i = 0; i < 2000; i++) {
+                MappedHashIndex.Entry entry = index.get(key(i));
+                assertNotNull(entry, "entry " + i);
+                assertEquals(i * 100L, entry.offset());
+                assertEquals(i, entry.length());
+            }
+            assertNull(index.get(key(5000)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should reopen the latest generation and remove the older ones")
+    public void testReopenAfterGrow() throws Exception {
+        Path path = directory.resolve("index.bin");
+        try (MappedHashIndex index = new MappedHashIndex(path, 16)) {
+            for (int i = 0; i < 100; i++) {
+                index.put(key(i), i, i);
+            }
+        }
+
+        try (MappedHashIndex reopened = new MappedHashIndex(path, 16)) {
+            assertEquals(100, reopened.getCount());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, reopened.get(key(i)).offset());
+            }
+            reopened.put(key(100), 100, 100);
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "only the current generation is kept");
+        }
+        try (MappedHashIndex reopened = new MappedHashIndex(path, 16)) {
+            assertEquals(101, reopened.getCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Should ignore a generation file left incomplete by a crash")
+    public void testIncompleteGenerationIgnored() throws Exception {
+        Path path = directory.resolve("index.bin");
+        try (MappedHashIndex index = new MappedHashIndex(path, 16)) {
+            index.put(key(1), 10, 20);
+        }
+        // A resize that never wrote its magic number
+        Files.write(directory.resolve("index.bin.1"), new byte[64]);
+
+        try (MappedHashIndex reopened = new MappedHashIndex(path, 16)) {
+            assertEquals(1, reopened.getCount());
+            assertEquals(10, reopened.get(key(1)).offset());
+        }
+        assertFalse(Files.exists(directory.resolve("index.bin.1")));
+    }
+
+    @Test
+    @DisplayName("Should overwrite the entry of an existing key")
+    public void testPutReplaces() throws Exception {
+        try (MappedHashIndex index = new MappedHashIndex(directory.resolve("index.bin"), 16)) {
+            index.put(key(7), 1, 1);
+            index.put(key(7), 2, 3);
+            assertEquals(1, index.getCount());
+            assertEquals(2, index.get(key(7)).offset());
+            assertEquals(3, index.get(key(7)).length());
+        }
+    }
+
+    private static byte[] key(int i) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(ByteBuffer.allocate(4).putInt(i).array());
+    }
+}
@@ -0,0 +1,154 @@
+package com.korconstructions.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.ocr.TesseractOCRParser;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.awt.Image;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PDF page extractor")
+public class PdfPageExtractorTest {
+
+    private static final int BUDGET_MB = 8;
+
+    @TempDir
+    Path directory;
+
+    private ExtractionMemoryBudget budget;
+    private ThreadPoolTaskExecutor ocrExecutor;
+    private ForkJoinPool pool;
+    private PdfPageExtractor extractor;
+
+    @BeforeEach
+    public void setUp() {
+        budget = new ExtractionMemoryBudget();
+        ReflectionTestUtils.setField(budget, "budgetMb", BUDGET_MB);
+        ReflectionTestUtils.setField(budget, "waitSeconds", 60L);
+        ReflectionTestUtils.setField(budget, "maxMainMemoryMb", 16L);
+        // Every file alone projects to more than the whole budget
+        ReflectionTestUtils.setField(budget, "objectOverheadRatio", 10_000.0);
+        ReflectionTestUtils.setField(budget, "tempDirectory", directory.toString());
+        budget.init();
+
+        ocrExecutor = new ThreadPoolTaskExecutor();
+        ocrExecutor.setCorePoolSize(2);
+        ocrExecutor.setMaxPoolSize(2);
+        ocrExecutor.initialize();
+        PdfOcrService ocrService = new PdfOcrService(ocrExecutor);
+        ReflectionTestUtils.setField(ocrService, "dpi", 72);
+        ReflectionTestUtils.setField(ocrService, "maxPixels", 1_000_000L);
+        ReflectionTestUtils.setField(ocrService, "workers", 2);
+        ReflectionTestUtils.setField(ocrService, "parser", new StubOcrParser());
+        ReflectionTestUtils.setField(ocrService, "rendered", new Semaphore(4));
+        ReflectionTestUtils.setField(ocrService, "available", true);
+
+        pool = new ForkJoinPool(4);
+        extractor = new PdfPageExtractor(pool, budget, ocrService);
+        ReflectionTestUtils.setField(extractor, "parallel", true);
+        ReflectionTestUtils.setField(extractor, "minParallelPages", 16);
+        ReflectionTestUtils.setField(extractor, "pagesPerTask", 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdownNow();
+        ocrExecutor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should OCR a scanned PDF whose file alone would fill the memory budget")
+    public void testScannedPdfWithinSmallBudget() throws Exception {
+        File file = scannedPdf("scanned.pdf", 40);
+
+        List<String> pages = collect(file);
+
+        assertEquals(40, pages.size());
+        assertTrue(pages.stream().allMatch("scanned page"::equals));
+        assertEquals(BUDGET_MB, available());
+    }
+
+    @Test
+    @DisplayName("Should finish concurrent scanned PDFs one after the other instead of starving each other")
+    public void testConcurrentScannedPdfs() throws Exception {
+        List<CompletableFuture<List<String>>> extractions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File file = scannedPdf("scanned-" + i + ".pdf", 20);
+            extractions.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return collect(file);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+
+        for (CompletableFuture<List<String>> extraction : extractions) {
+            assertEquals(20, extraction.get(60, TimeUnit.SECONDS).size());
+        }
+        assertEquals(BUDGET_MB, available());
+    }
+
+    private List<String> collect(File file) throws Exception {
+        List<String> pages = new ArrayList<>();
+        extractor.extract(file, (page, text) -> {
+            assertEquals(pages.size() + 1, page);
+            pages.add(text);
+        });
+        return pages;
+    }
+
+    private int available() {
+        Map<String, Object> stats = budget.getStats();
+        return (int) stats.get("availableMb");
+    }
+
+    /**
+     * PDF of blank pages, i.e. pages without a text layer like a scan
+     */
+    private File scannedPdf(String name, int pages) throws Exception {
+        File file = directory.resolve(name).toFile();
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pages; i++) {
+                document.addPage(new PDPage(PDRectangle.A4));
+            }
+            document.save(file);
+        }
+        return file;
+    }
+
+    private static class StubOcrParser extends TesseractOCRParser {
+
+        @Override
+        public void parse(Image image, ContentHandler handler, Metadata metadata, ParseContext context)
+                throws SAXException {
+            XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+            xhtml.startDocument();
+            xhtml.characters("scanned page");
+            xhtml.endDocument();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.korconstructions.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Streaming chunker")
+public class StreamingChunkerTest {
+
+    private record Chunk(String text, int firstPage, int lastPage) {
+    }
+
+    @Test
+    @DisplayName("Should cut at a paragraph break rather than mid-sentence")
+    public void testCutsAtParagraph() {
+        String first = "Η άδεια δόμησης εκδόθηκε για τον πρώτο όροφο του κτιρίου. ".repeat(2).trim();
+        String second = "The contractor delivers the concrete before the end of the month. ".repeat(3).trim();
+        List<Chunk> chunks = chunk(first + "\n\n" + second, 200, 20);
+
+        assertTrue(chunks.size() >= 2);
+        assertEquals(first, chunks.get(0).text());
+        for (Chunk chunk : chunks) {
+            assertTrue(chunk.text().length() <= 200, "chunk longer than the maximum: " + chunk.text().length());
+        }
+    }
+
+    @Test
+    @DisplayName("Should start each chunk with the tail of the previous one, from a word boundary")
+    public void testOverlap() {
+        String text = words(400);
+        List<Chunk> chunks = chunk(text, 120, 30);
+
+        assertTrue(chunks.size() > 3);
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1).text();
+            String next = chunks.get(i).text();
+            String shared = longestOverlap(previous, next);
+            assertFalse(shared.isEmpty(), "chunk " + i + " does not overlap the previous one");
+            assertTrue(shared.length() <= 30, "overlap longer than configured: " + shared);
+            assertTrue(next.startsWith("w"), "chunk " + i + " starts mid-word: " + next);
+        }
+        // Nothing is lost: every word appears in some chunk
+        String joined = String.join(" ", chunks.stream().map(Chunk::text).toList());
+        for (String word : text.split(" ")) {
+            assertTrue(joined.contains(word), word);
+        }
+    }
+
+    @Test
+    @DisplayName("Should produce the same chunks however the text is split into appends")
+    public void testAppendSplitIndependent() {
+        String text = words(300) + "\n\n" + words(200) + ". " + words(150);
+        List<Chunk> whole = chunk(text, 150, 25);
+
+        List<Chunk> pieces = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(150, 25,
+            (chunk, firstPage, lastPage) -> pieces.add(new Chunk(chunk, firstPage, lastPage)));
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i += 7) {
+            chunker.append(chars, i, Math.min(7, chars.length - i));
+        }
+        chunker.finish();
+
+        assertEquals(whole, pieces);
+        assertEquals(text.length(), chunker.getTotalCharacters());
+        assertEquals(whole.size(), chunker.getChunkCount());
+    }
+
+    @Test
+    @DisplayName("Should report the pages each chunk spans")
+    public void testPageRanges() {
+        List<Chunk> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(100, 10,
+            (chunk, firstPage, lastPage) -> chunks.add(new Chunk(chunk, firstPage, lastPage)));
+        for (int page = 1; page <= 5; page++) {
+            chunker.startPage(page);
+            chunker.append("page" + page + " " + "x".repeat(20) + " " + "y".repeat(20) + "\n");
+        }
+        chunker.finish();
+
+        assertFalse(chunks.isEmpty());
+        assertEquals(1, chunks.get(0).firstPage());
+        assertEquals(5, chunks.get(chunks.size() - 1).lastPage());
+        for (Chunk chunk : chunks) {
+            assertTrue(chunk.firstPage() <= chunk.lastPage(), chunk.toString());
+            int firstMarker = chunk.text().indexOf("page");
+            if (firstMarker == 0) {
+                // A chunk that starts with a page marker starts on that page
+                assertEquals(Integer.parseInt(chunk.text().substring(4, 5)), chunk.firstPage(), chunk.toString());
+            }
+            int lastMarker = chunk.text().lastIndexOf("page");
+            if (lastMarker >= 0) {
+                assertEquals(Integer.parseInt(chunk.text().substring(lastMarker + 4, lastMarker + 5)),
+                    chunk.lastPage(), chunk.toString());
+            }
+        }
+        assertTrue(chunks.stream().anyMatch(chunk -> chunk.firstPage() < chunk.lastPage()),
+            "some chunk should span two pages");
+    }
+
+    @Test
+    @DisplayName("Should reject an overlap that leaves no room for progress")
+    public void testRejectsOverlapNotBelowChunkSize() {
+        assertThrows(IllegalArgumentException.class, () -> new StreamingChunker(100, 100, chunk -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingChunker(100, 150, chunk -> { }));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingChunker(100, -1, chunk -> { }));
+    }
+
+    @Test
+    @DisplayName("Should still make progress with the largest allowed overlap")
+    public void testLargestOverlapTerminates() {
+        String text = words(200) + " " + "x".repeat(500);
+        List<Chunk> chunks = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> chunk(text, 100, 99));
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.get(chunks.size() - 1).text().endsWith("x"));
+    }
+
+    @Test
+    @DisplayName("Should report page 0 when the extractor marks no pages")
+    public void testNoPages() {
+        List<Chunk> chunks = chunk(words(200), 100, 10);
+        assertTrue(chunks.stream().allMatch(chunk -> chunk.firstPage() == 0 && chunk.lastPage() == 0));
+    }
+
+    @Test
+    @DisplayName("Should emit a short document as one chunk and a blank one as none")
+    public void testShortAndBlank() {
+        List<Chunk> chunks = chunk("  Σύντομο κείμενο.  ", 100, 10);
+        assertEquals(1, chunks.size());
+        assertEquals("Σύντομο κείμενο.", chunks.get(0).text());
+
+        StreamingChunker blank = new StreamingChunker(100, 10, chunk -> fail("blank text emitted"));
+        blank.append(" \n\n  ");
+        assertFalse(blank.hasContent());
+        blank.finish();
+        assertEquals(0, blank.getChunkCount());
+    }
+
+    @Test
+    @DisplayName("Should not emit a tail that only repeats the previous chunk's overlap")
+    public void testNoOverlapOnlyTail() {
+        String text = "a".repeat(60) + " " + "b".repeat(30) + " " + "c".repeat(12) + " end";
+        List<Chunk> chunks = chunk(text, 100, 20);
+        String last = chunks.get(chunks.size() - 1).text();
+        assertTrue(last.endsWith("end"));
+        for (int i = 1; i < chunks.size(); i++) {
+            assertNotEquals(chunks.get(i - 1).text(), chunks.get(i).text());
+            assertFalse(chunks.get(i - 1).text().endsWith(chunks.get(i).text()), "tail repeats the overlap");
+        }
+    }
+
+    @Test
+    @DisplayName("Should pass the raw text and page starts to listeners")
+    public void testListener() {
+        StringBuilder seen = new StringBuilder();
+        StreamingChunker chunker = new StreamingChunker(50, 5, chunk -> { });
+        chunker.addListener(new StreamingChunker.TextListener() {
+            @Override
+            public void onText(CharSequence text) {
+                seen.append(text);
+            }
+
+            @Override
+            public void onPageStart(int page) {
+                seen.append('[').append(page).append(']');
+            }
+        });
+        chunker.startPage(1);
+        chunker.append("one ".toCharArray(), 0, 4);
+        chunker.startPage(2);
+        chunker.append("two");
+        chunker.finish();
+        assertEquals("[1]one [2]two", seen.toString());
+    }
+
+    private static List<Chunk> chunk(String text, int maxChunkSize, int overlap) {
+        List<Chunk> chunks = new ArrayList<>();
+        StreamingChunker chunker = new StreamingChunker(maxChunkSize, overlap,
+            (chunk, firstPage, lastPage) -> chunks.add(new Chunk(chunk, firstPage, lastPage)));
+        chunker.append(text);
+        chunker.finish();
+        return chunks;
+    }
+
+    private static String words(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append('w').append(i);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Longest suffix of previous that is also a prefix of next
+     */
+    private static String longestOverlap(String previous, String next) {
+        for (int length = Math.min(previous.length(), next.length()); length > 0; length--) {
+            if (previous.endsWith(next.substring(0, length))) {
+                return next.substring(0, length);
+            }
+        }
+        return "";
+    }
+}